@@ -0,0 +1,81 @@
+package br.unb.cic.opencv.builder;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import br.unb.cic.opencv.util.ImageProcessing;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares eager and lazy builders on the blur-then-gray chain used before square detection.
+ * Results are written to logcat under the "MatBuilderBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MatBuilderBenchmark {
+
+    private static final String TAG = MatBuilderBenchmark.class.getSimpleName();
+    private static final int RUNS = 10;
+
+    static {
+        ImageProcessing.checkOpenCV();
+    }
+
+    @Test
+    public void blurThenGray() {
+        MatPool pool = new MatPool(2);
+        Mat image = new Mat(960, 1280, CvType.CV_8UC4);
+        Core.randu(image, 0, 256);
+
+        long eagerNs = 0, lazyNs = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            MatBuilder eager = new MatBuilder(image, pool).resizeIfNecessary().gaussian3().rgbToGray();
+            eager.getMat();
+            eagerNs += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            MatBuilder lazy = MatBuilder.lazy(image, pool).resizeIfNecessary().gaussian3().rgbToGray();
+            lazy.getMat();
+            lazyNs += System.nanoTime() - start;
+
+            assertEquals(eager.getMat().type(), lazy.getMat().type());
+            assertTrue(maxDifference(eager.getMat(), lazy.getMat()) <= 2);
+
+            eager.close();
+            lazy.close();
+        }
+
+        assertEquals(0, pool.leased());
+        Log.i(TAG, String.format("1280x960: eager %d ms, lazy %d ms (%.1fx)",
+                eagerNs / RUNS / 1000000, lazyNs / RUNS / 1000000, eagerNs / (double) lazyNs));
+        image.release();
+    }
+
+    @Test
+    public void lazyBuilderLeavesInputUntouched() {
+        Mat image = new Mat(480, 640, CvType.CV_8UC4);
+        Core.randu(image, 0, 256);
+        Mat copy = image.clone();
+
+        try (MatBuilder builder = MatBuilder.lazy(image).resizeIfNecessary().gaussian3().enhance()) {
+            assertEquals(3, builder.getMat().channels());
+        }
+
+        assertEquals(0, maxDifference(image, copy), 0);
+    }
+
+    private static double maxDifference(Mat a, Mat b) {
+        Mat diff = new Mat();
+        Core.absdiff(a, b, diff);
+        double max = Core.minMaxLoc(diff.reshape(1)).maxVal;
+        diff.release();
+        return max;
+    }
+}
@@ -0,0 +1,69 @@
+package br.unb.cic.opencv.builder;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import br.unb.cic.opencv.util.ImageProcessing;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class MatPoolTest {
+
+    static {
+        ImageProcessing.checkOpenCV();
+    }
+
+    @Test
+    public void releasedMatsAreReused() {
+        MatPool pool = new MatPool(2);
+        Mat first = pool.acquire(480, 640, CvType.CV_8UC1);
+        pool.release(first);
+        Mat second = pool.acquire(480, 640, CvType.CV_8UC1);
+
+        assertSame(first, second);
+        assertEquals(1, pool.hits());
+        assertEquals(1, pool.misses());
+    }
+
+    @Test
+    public void retainedMatsStayLeased() {
+        MatPool pool = new MatPool(2);
+        Mat mat = pool.acquire(10, 10, CvType.CV_8UC3);
+        pool.retain(mat);
+        pool.release(mat);
+
+        assertEquals(1, pool.leased());
+        pool.release(mat);
+        assertEquals(0, pool.leased());
+    }
+
+    @Test
+    public void builderReturnsEverythingOnClose() {
+        MatPool pool = new MatPool(2);
+        pool.setDebug(true);
+        Mat src = new Mat(1920, 2560, CvType.CV_8UC4);
+
+        try (MatBuilder builder = new MatBuilder(src, pool).resizeIfNecessary().gaussian3().rgbToGray().canny()) {
+            assertEquals(1280, builder.getMat().cols());
+        }
+
+        assertEquals(0, pool.reportLeaks());
+        assertFalse(src.empty());
+        src.release();
+    }
+
+    @Test
+    public void unknownMatsAreIgnored() {
+        MatPool pool = new MatPool(2);
+        Mat mat = new Mat(10, 10, CvType.CV_8UC1);
+        pool.release(mat);
+
+        assertFalse(mat.empty());
+        assertEquals(0, pool.leased());
+    }
+}
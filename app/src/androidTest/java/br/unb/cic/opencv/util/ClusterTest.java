@@ -0,0 +1,130 @@
+package br.unb.cic.opencv.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the native cluster planes against the old per-pixel loop, logs how long full resolution photos take and
+ * how far the subsampled centers drift from the exact ones for a few sample sizes and attempt counts.
+ * Results are written to logcat under the "ClusterTest" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClusterTest {
+
+    private static final String TAG = ClusterTest.class.getSimpleName();
+
+    static {
+        ImageProcessing.checkOpenCV();
+    }
+
+    @Test
+    public void planesMatchPerPixelLoop() {
+        Mat image = EnhancerBenchmark.randomImage(160, 120);
+        Cluster.Result result = Cluster.segment(image, 3);
+
+        List<Mat> planes = result.planes(image);
+        int[] legacyCounts = new int[result.k()];
+        List<Mat> legacy = perPixelPlanes(image, result, legacyCounts);
+
+        int total = 0;
+        for (int i = 0; i < result.k(); i++) {
+            assertTrue(EnhancerBenchmark.equal(legacy.get(i), planes.get(i)));
+            assertEquals(legacyCounts[i], result.counts()[i]);
+            total += result.counts()[i];
+        }
+        assertEquals(image.total(), total);
+    }
+
+    @Test
+    public void fullResolution() {
+        Mat image = EnhancerBenchmark.randomImage(4032, 3024);
+
+        long start = System.nanoTime();
+        Cluster.Result result = Cluster.segment(image, 2);
+        long kmeansNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<Mat> planes = result.planes(image);
+        long planesNs = System.nanoTime() - start;
+
+        assertEquals(2, planes.size());
+        Log.i(TAG, String.format("4032x3024: kmeans %d ms, planes %d ms", kmeansNs / 1000000, planesNs / 1000000));
+    }
+
+    @Test
+    public void subsampledDrift() {
+        Mat image = documentLikeImage(1280, 960);
+
+        long start = System.nanoTime();
+        Cluster.Result exact = Cluster.segment(image, 2);
+        long exactNs = System.nanoTime() - start;
+        Log.i(TAG, String.format("1280x960 exact: %d ms", exactNs / 1000000));
+
+        for (int sampleSize : new int[]{1024, 4096, 16384}) {
+            for (int attempts : new int[]{1, 3}) {
+                start = System.nanoTime();
+                Cluster.Result subsampled = Cluster.segment(image, 2, Cluster.Options.subsampled(sampleSize, attempts));
+                long ns = System.nanoTime() - start;
+
+                double drift = Cluster.drift(exact, subsampled);
+                assertTrue(drift < 16);
+                Log.i(TAG, String.format("1280x960 %d samples, %d attempts: %d ms (%.1fx), drift %.1f",
+                        sampleSize, attempts, ns / 1000000, exactNs / (double) ns, drift));
+                subsampled.release();
+            }
+        }
+        exact.release();
+    }
+
+    /**
+     * A light page with noise over a darker, noisy background
+     */
+    private static Mat documentLikeImage(int width, int height) {
+        Mat image = new Mat(height, width, CvType.CV_8UC4, new Scalar(60, 70, 80, 255));
+        image.submat(height / 6, height * 5 / 6, width / 5, width * 4 / 5).setTo(new Scalar(230, 225, 220, 255));
+        Mat noise = new Mat(image.size(), image.type());
+        Core.randn(noise, 0, 12);
+        Core.add(image, noise, image);
+        noise.release();
+        return image;
+    }
+
+    /**
+     * The implementation showClusters had before it was vectorized
+     */
+    private static List<Mat> perPixelPlanes(Mat cutout, Cluster.Result result, int[] counts) {
+        Mat labels = result.labels().reshape(1, (int) cutout.total());
+        Mat centers = result.centers();
+
+        List<Mat> clusters = new ArrayList<>();
+        for (int i = 0; i < centers.rows(); i++) {
+            clusters.add(Mat.zeros(cutout.size(), cutout.type()));
+        }
+
+        int rows = 0;
+        for (int y = 0; y < cutout.rows(); y++) {
+            for (int x = 0; x < cutout.cols(); x++) {
+                int label = (int) labels.get(rows, 0)[0];
+                int r = (int) centers.get(label, 2)[0];
+                int g = (int) centers.get(label, 1)[0];
+                int b = (int) centers.get(label, 0)[0];
+                counts[label]++;
+                clusters.get(label).put(y, x, b, g, r, 255D);
+                rows++;
+            }
+        }
+        return clusters;
+    }
+}
@@ -0,0 +1,144 @@
+package br.unb.cic.opencv.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tracks a synthetic page sliding over a textured table and compares the cost of a tracked frame with a full
+ * detection. Timings are written to logcat under the "CornerTrackerTest" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CornerTrackerTest {
+
+    private static final String TAG = CornerTrackerTest.class.getSimpleName();
+    private static final int WIDTH = 320, HEIGHT = 240;
+
+    static {
+        ImageProcessing.checkOpenCV();
+    }
+
+    @Test
+    public void followsMovingPage() {
+        CornerTracker tracker = new CornerTracker(30);
+        Mat frame = new Mat();
+
+        page(frame, 0);
+        tracker.seed(frame, square(0));
+        for (int t = 1; t <= 20; t++) {
+            page(frame, t);
+            Square tracked = tracker.track(frame);
+            assertNotNull("lost at frame " + t, tracked);
+            assertClose(square(t), tracked, 3);
+        }
+        assertTrue(tracker.isTracking());
+        assertFalse(tracker.needsDetection());
+
+        tracker.release();
+        frame.release();
+    }
+
+    @Test
+    public void losesPageThatLeaves() {
+        CornerTracker tracker = new CornerTracker(30);
+        Mat frame = new Mat();
+
+        page(frame, 0);
+        tracker.seed(frame, square(0));
+        Mat empty = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, new Scalar(40));
+        for (int t = 0; t < 5 && tracker.isTracking(); t++) {
+            tracker.track(empty);
+        }
+        assertFalse(tracker.isTracking());
+        assertTrue(tracker.needsDetection());
+
+        tracker.release();
+        empty.release();
+        frame.release();
+    }
+
+    @Test
+    public void trackingAgainstDetection() {
+        CornerTracker tracker = new CornerTracker(30);
+        Mat frame = new Mat(), blurred = new Mat();
+        int frames = 30;
+
+        long detectionNs = 0;
+        for (int t = 0; t < frames; t++) {
+            page(frame, t);
+            long start = System.nanoTime();
+            Imgproc.GaussianBlur(frame, blurred, new Size(5, 5), 0);
+            ImageProcessing.detectSquare(blurred);
+            detectionNs += System.nanoTime() - start;
+        }
+
+        page(frame, 0);
+        tracker.seed(frame, square(0));
+        long trackingNs = 0;
+        for (int t = 1; t <= frames; t++) {
+            page(frame, t);
+            long start = System.nanoTime();
+            tracker.track(frame);
+            trackingNs += System.nanoTime() - start;
+        }
+
+        Log.i(TAG, String.format("%dx%d: detection %.2f ms/frame, tracking %.2f ms/frame (%.1fx)", WIDTH, HEIGHT,
+                detectionNs / 1e6 / frames, trackingNs / 1e6 / frames, detectionNs / (double) trackingNs));
+
+        tracker.release();
+        blurred.release();
+        frame.release();
+    }
+
+    /**
+     * Page corners at frame t, moving right and down and slowly turning
+     */
+    private static Square square(int t) {
+        double cx = 140 + 2 * t, cy = 110 + t, angle = Math.toRadians(10 + 0.5 * t);
+        double[][] offsets = {{-70, -50}, {70, -50}, {-70, 50}, {70, 50}};
+        Point[] points = new Point[4];
+        for (int i = 0; i < 4; i++) {
+            double x = offsets[i][0], y = offsets[i][1];
+            points[i] = new Point(cx + x * Math.cos(angle) - y * Math.sin(angle), cy + x * Math.sin(angle) + y * Math.cos(angle));
+        }
+        return new Square(points[0], points[1], points[2], points[3]);
+    }
+
+    private static void page(Mat frame, int t) {
+        frame.create(HEIGHT, WIDTH, CvType.CV_8UC1);
+        frame.setTo(new Scalar(40));
+        // a fixed texture on the table, so the flow has something to latch on besides the page
+        for (int y = 0; y < HEIGHT; y += 16) {
+            Imgproc.line(frame, new Point(0, y), new Point(WIDTH, y), new Scalar(60), 1);
+        }
+        Square square = square(t);
+        MatOfPoint polygon = new MatOfPoint(square.tl, square.tr, square.br, square.bl);
+        Imgproc.fillPoly(frame, Collections.singletonList(polygon), new Scalar(220), Imgproc.LINE_AA, 0, new Point());
+        polygon.release();
+        Imgproc.GaussianBlur(frame, frame, new Size(3, 3), 0);
+    }
+
+    private static void assertClose(Square expected, Square actual, double tolerance) {
+        assertClose(expected.tl, actual.tl, tolerance);
+        assertClose(expected.tr, actual.tr, tolerance);
+        assertClose(expected.bl, actual.bl, tolerance);
+        assertClose(expected.br, actual.br, tolerance);
+    }
+
+    private static void assertClose(Point expected, Point actual, double tolerance) {
+        assertTrue(expected + " vs " + actual, Math.hypot(expected.x - actual.x, expected.y - actual.y) <= tolerance);
+    }
+}
@@ -0,0 +1,98 @@
+package br.unb.cic.opencv.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the bulk-buffer enhance against the old per-pixel get/put loop and measures how
+ * the banded ForkJoin path scales with parallelism.
+ * Results are written to logcat under the "EnhancerBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EnhancerBenchmark {
+
+    private static final String TAG = EnhancerBenchmark.class.getSimpleName();
+
+    static {
+        ImageProcessing.checkOpenCV();
+    }
+
+    @Test
+    public void enhanceSpeedup() {
+        for (int size : new int[]{640, 1280, 4096}) {
+            Mat image = randomImage(size, size * 3 / 4);
+            Mat legacy = image.clone();
+            Mat bulk = image.clone();
+
+            long start = System.nanoTime();
+            perPixelEnhance(legacy);
+            long legacyNs = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Enhancer.enhance(bulk, Enhancer.DEFAULT_THRESHOLD, 1);
+            long bulkNs = System.nanoTime() - start;
+
+            assertTrue(equal(legacy, bulk));
+            Log.i(TAG, String.format("%dpx: per-pixel %d ms, bulk %d ms (%.1fx)",
+                    size, legacyNs / 1000000, bulkNs / 1000000, legacyNs / (double) bulkNs));
+        }
+    }
+
+    @Test
+    public void parallelScaling() {
+        Mat image = randomImage(4096, 3072);
+        Mat reference = image.clone();
+        Enhancer.enhance(reference, Enhancer.DEFAULT_THRESHOLD, 1);
+
+        for (int parallelism : new int[]{1, 2, 4, 8}) {
+            Mat tiled = image.clone();
+
+            long start = System.nanoTime();
+            Enhancer.enhance(tiled, Enhancer.DEFAULT_THRESHOLD, parallelism);
+            long ns = System.nanoTime() - start;
+
+            assertTrue(equal(reference, tiled));
+            Log.i(TAG, String.format("4096px, parallelism %d: %d ms", parallelism, ns / 1000000));
+        }
+    }
+
+    static Mat randomImage(int width, int height) {
+        Mat image = new Mat(height, width, CvType.CV_8UC4);
+        Core.randu(image, 0, 256);
+        return image;
+    }
+
+    static boolean equal(Mat a, Mat b) {
+        Mat diff = new Mat();
+        Core.absdiff(a, b, diff);
+        return Core.countNonZero(diff.reshape(1)) == 0;
+    }
+
+    /**
+     * The enhance loop as it was before the bulk rewrite, kept as the reference
+     */
+    private static void perPixelEnhance(Mat mat) {
+        Imgproc.cvtColor(mat, mat, Imgproc.COLOR_RGBA2RGB);
+        int parameter = 165;
+        for (int i = 0; i < mat.cols(); i++) {
+            for (int j = 0; j < mat.rows(); j++) {
+                double[] values = mat.get(j, i);
+                if (values[0] >= parameter && values[1] >= parameter && values[2] >= parameter) {
+                    values[0] = 255;
+                    values[1] = 255;
+                    values[2] = 255;
+                }
+                mat.put(j, i, values);
+            }
+        }
+    }
+}
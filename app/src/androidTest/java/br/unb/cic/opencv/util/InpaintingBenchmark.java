@@ -0,0 +1,105 @@
+package br.unb.cic.opencv.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.photo.Photo;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the per-component inpainting against a single Photo.inpaint over the whole frame, and the multi-scale
+ * inpainting against the full resolution one: time and PSNR of the result.
+ * Results are written to logcat under the "InpaintingBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InpaintingBenchmark {
+
+    private static final String TAG = InpaintingBenchmark.class.getSimpleName();
+
+    static {
+        ImageProcessing.checkOpenCV();
+    }
+
+    @Test
+    public void qualityAndTime() {
+        for (int width : new int[]{1280, 2560, 4032}) {
+            Mat image = whiteboardWithGlare(width, width * 3 / 4);
+
+            long start = System.nanoTime();
+            Mat full = Inpainting.inpaint(image);
+            long fullNs = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Mat multiScale = Inpainting.inpaintMultiScale(image);
+            long multiScaleNs = System.nanoTime() - start;
+
+            assertEquals(full.size(), multiScale.size());
+            assertEquals(full.type(), multiScale.type());
+            double psnr = Core.PSNR(full, multiScale);
+            Log.i(TAG, String.format("%dpx: full %d ms, multi-scale %d ms (%.1fx), PSNR %.1f dB",
+                    width, fullNs / 1000000, multiScaleNs / 1000000, fullNs / (double) multiScaleNs, psnr));
+
+            full.release();
+            multiScale.release();
+            image.release();
+        }
+    }
+
+    @Test
+    public void componentsAgainstWholeFrame() {
+        for (int parallelism : new int[]{1, Workers.DEFAULT_PARALLELISM}) {
+            Mat image = whiteboardWithGlare(2560, 1920);
+            Mat mask = ImageProcessing.getMaskInRange(image);
+            Mat rgb = new Mat();
+            Imgproc.cvtColor(image, rgb, Imgproc.COLOR_RGBA2RGB);
+
+            long start = System.nanoTime();
+            Mat whole = new Mat();
+            Photo.inpaint(rgb, mask, whole, Inpainting.RADIUS, Photo.INPAINT_TELEA);
+            long wholeNs = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Mat components = Inpainting.fill(rgb, mask, Inpainting.RADIUS, parallelism, null);
+            long componentsNs = System.nanoTime() - start;
+
+            double psnr = Core.PSNR(whole, components);
+            assertTrue(psnr > 40);
+            Log.i(TAG, String.format("2560px, parallelism %d: whole frame %d ms, components %d ms (%.1fx), PSNR %.1f dB",
+                    parallelism, wholeNs / 1000000, componentsNs / 1000000, wholeNs / (double) componentsNs, psnr));
+        }
+    }
+
+    @Test
+    public void imageWithoutGlareIsUnchanged() {
+        Mat image = new Mat(1920, 2560, CvType.CV_8UC4, new Scalar(90, 90, 90, 255));
+
+        Mat out = Inpainting.inpaintMultiScale(image);
+        Mat rgb = new Mat();
+        Imgproc.cvtColor(image, rgb, Imgproc.COLOR_RGBA2RGB);
+
+        assertTrue(EnhancerBenchmark.equal(rgb, out));
+    }
+
+    /**
+     * A gray board with some strokes and a couple of saturated blobs
+     */
+    private static Mat whiteboardWithGlare(int width, int height) {
+        Mat image = new Mat(height, width, CvType.CV_8UC4, new Scalar(150, 155, 160, 255));
+        for (int i = 1; i < 8; i++) {
+            Imgproc.line(image, new Point(width / 10, i * height / 8), new Point(width * 9 / 10, i * height / 8 + height / 20),
+                    new Scalar(20, 40, 120, 255), Math.max(2, width / 300));
+        }
+        Imgproc.circle(image, new Point(width / 3, height / 3), width / 20, new Scalar(255, 255, 255, 255), -1);
+        Imgproc.circle(image, new Point(width * 2 / 3, height * 3 / 5), width / 30, new Scalar(250, 250, 250, 255), -1);
+        return image;
+    }
+}
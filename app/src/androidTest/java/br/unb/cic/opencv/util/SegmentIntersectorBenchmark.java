@@ -0,0 +1,72 @@
+package br.unb.cic.opencv.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the grid intersection search against the brute force pair loop on synthetic segment sets.
+ * Results are written to logcat under the "SegmentIntersectorBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SegmentIntersectorBenchmark {
+
+    private static final String TAG = SegmentIntersectorBenchmark.class.getSimpleName();
+    private static final double WIDTH = 1280, HEIGHT = 960;
+
+    @Test
+    public void gridAgainstBruteForce() {
+        SegmentIntersector intersector = new SegmentIntersector();
+        for (int n : new int[]{100, 500, 1000, 2000, 5000}) {
+            double[] segments = randomSegments(n, new Random(n));
+            bruteForce(segments, n);
+            intersector.findIntersections(segments, n, WIDTH, HEIGHT);
+
+            long start = System.nanoTime();
+            int bruteHits = bruteForce(segments, n);
+            long bruteNs = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int gridHits = intersector.findIntersections(segments, n, WIDTH, HEIGHT);
+            long gridNs = System.nanoTime() - start;
+
+            assertEquals(bruteHits, gridHits);
+            Log.i(TAG, String.format("%d segments: brute force %.2f ms, grid %.2f ms (%.1fx)",
+                    n, bruteNs / 1e6, gridNs / 1e6, bruteNs / (double) gridNs));
+        }
+    }
+
+    private static int bruteForce(double[] segments, int n) {
+        double[] pt = new double[2];
+        int hits = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (SegmentIntersector.intersect(segments, i, j, pt)
+                        && pt[0] >= 0 && pt[1] >= 0 && pt[0] < WIDTH && pt[1] < HEIGHT) hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Segments of 20 to 300 pixels, similar to what HoughLinesP returns on a cluttered photo
+     */
+    private static double[] randomSegments(int n, Random random) {
+        double[] segments = new double[4 * n];
+        for (int i = 0; i < n; i++) {
+            double x = random.nextDouble() * WIDTH, y = random.nextDouble() * HEIGHT;
+            double angle = random.nextDouble() * Math.PI, length = 20 + random.nextDouble() * 280;
+            segments[4 * i] = x;
+            segments[4 * i + 1] = y;
+            segments[4 * i + 2] = Math.max(0, Math.min(WIDTH - 1, x + Math.cos(angle) * length));
+            segments[4 * i + 3] = Math.max(0, Math.min(HEIGHT - 1, y + Math.sin(angle) * length));
+        }
+        return segments;
+    }
+}
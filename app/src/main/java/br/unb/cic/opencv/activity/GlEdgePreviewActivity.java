@@ -0,0 +1,165 @@
+package br.unb.cic.opencv.activity;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import org.opencv.android.CameraGLSurfaceView;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import br.unb.cic.opencv.R;
+import br.unb.cic.opencv.gl.EdgePass;
+import br.unb.cic.opencv.util.ImageProcessing;
+import br.unb.cic.opencv.util.Square;
+
+import static org.opencv.core.Core.extractChannel;
+
+/**
+ * Edge preview drawn by {@link EdgePass} on the GPU, camera frames never reach the CPU except for the small
+ * luma readback the quad detector works on while scanning (tap to toggle)
+ */
+public class GlEdgePreviewActivity extends AppCompatActivity implements CameraGLSurfaceView.CameraTextureListener {
+
+    private static final int READBACK_SIZE = 320;
+
+    private static String activityName = GlEdgePreviewActivity.class.getSimpleName();
+
+    private CameraGLSurfaceView cameraView;
+    private volatile EdgePass edgePass;
+
+    private volatile boolean scanning;
+    private final ExecutorService detector = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean detecting = new AtomicBoolean(false);
+    /**
+     * Made once OpenCV is loaded and the camera started, released on the detector thread when it stops
+     */
+    private volatile Mat detectionFrame, detectionGray;
+    private final EdgePass.ReadbackListener readback = this::onReadback;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_gl_edge_preview);
+
+        cameraView = (CameraGLSurfaceView) findViewById(R.id.glCameraView);
+        cameraView.setCameraTextureListener(this);
+        cameraView.setOnClickListener(v -> {
+            scanning = !scanning;
+            EdgePass pass = edgePass;
+            if (pass != null) {
+                pass.setQuad(null);
+            }
+        });
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        if (detectionFrame == null) {
+            detectionGray = new Mat();
+            detectionFrame = new Mat();
+        }
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+        Mat frame = detectionFrame, gray = detectionGray;
+        if (frame == null) {
+            return;
+        }
+        detectionFrame = detectionGray = null;
+        // the detector may still be reading them, let it release the Mats after it is done
+        detector.execute(() -> {
+            frame.release();
+            gray.release();
+        });
+    }
+
+    @Override
+    public boolean onCameraTexture(int texIn, int texOut, int width, int height) {
+        EdgePass pass = edgePass;
+        if (pass == null) {
+            pass = edgePass = new EdgePass(READBACK_SIZE);
+        }
+        if (scanning && detecting.compareAndSet(false, true)) {
+            pass.requestReadback(readback);
+        }
+        pass.draw(texIn, texOut, width, height);
+        return true;
+    }
+
+    /**
+     * Runs on the GL thread, copies the readback so the detector can work while the next frames are drawn
+     */
+    private void onReadback(byte[] rgba, int width, int height) {
+        Mat frame = detectionFrame, gray = detectionGray;
+        if (frame == null) {
+            detecting.set(false);
+            return;
+        }
+        frame.create(height, width, CvType.CV_8UC4);
+        frame.put(0, 0, rgba);
+        detector.execute(() -> detect(frame, gray));
+    }
+
+    private void detect(Mat frame, Mat gray) {
+        try {
+            extractChannel(frame, gray, 0);
+            ImageProcessing.detectionBlur(gray, gray);
+            Square square = ImageProcessing.detectSquare(gray);
+
+            EdgePass pass = edgePass;
+            if (pass != null) {
+                pass.setQuad(square != null && scanning ? new float[]{
+                        (float) square.tl.x, (float) square.tl.y, (float) square.tr.x, (float) square.tr.y,
+                        (float) square.br.x, (float) square.br.y, (float) square.bl.x, (float) square.bl.y} : null);
+            }
+        } finally {
+            detecting.set(false);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        // the pass's programs, textures and framebuffers belong to the GL context, which the view drops when it
+        // pauses; queued before onPause, the release runs on the GL thread while the context is still current
+        cameraView.queueEvent(this::releaseEdgePass);
+        cameraView.disableView();
+        cameraView.onPause();
+        super.onPause();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (OpenCVLoader.initDebug()) {
+            Log.d(activityName, "OpenCV successfully Loaded");
+            cameraView.onResume();
+            cameraView.enableView();
+        } else {
+            Log.d(activityName, "OpenCV not Loaded");
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        detector.shutdown();
+    }
+
+    /**
+     * Runs on the GL thread, the next frame makes a new pass
+     */
+    private void releaseEdgePass() {
+        EdgePass pass = edgePass;
+        if (pass != null) {
+            edgePass = null;
+            pass.release();
+        }
+    }
+}
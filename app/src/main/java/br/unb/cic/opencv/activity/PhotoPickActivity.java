@@ -12,20 +12,29 @@ import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.Toast;
 
 import com.github.chrisbanes.photoview.PhotoView;
 
 import org.opencv.android.Utils;
 import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.function.Function;
 
+import br.unb.cic.opencv.BuildConfig;
 import br.unb.cic.opencv.R;
 import br.unb.cic.opencv.builder.MatBuilder;
+import br.unb.cic.opencv.builder.MatPool;
+import br.unb.cic.opencv.builder.PipelineRunner;
+import br.unb.cic.opencv.util.BitmapDecoder;
+import br.unb.cic.opencv.util.ImageProcessing;
 
 import static br.unb.cic.opencv.util.Constants.GALLERY_PICK_REQUEST_CODE;
 import static br.unb.cic.opencv.util.ImageProcessing.checkOpenCV;
@@ -33,9 +42,17 @@ import static br.unb.cic.opencv.util.ImageProcessing.checkOpenCV;
 public class PhotoPickActivity extends AppCompatActivity {
 
     PhotoView imageView;
+    ProgressBar progressBar;
+
+    private final PipelineRunner runner = new PipelineRunner(1, 2);
 
     Bitmap bitmap, original, contour;
 
+    /**
+     * Image picked from the gallery, kept so its full resolution can be decoded only when needed
+     */
+    Uri imageUri;
+
     static {
         checkOpenCV();
     }
@@ -46,6 +63,18 @@ public class PhotoPickActivity extends AppCompatActivity {
         setContentView(R.layout.activity_photo_pick);
 
         imageView = findViewById(R.id.imageView);
+        progressBar = findViewById(R.id.progressBar);
+        MatPool.shared().setDebug(BuildConfig.DEBUG);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        runner.shutdown();
+        if (BuildConfig.DEBUG) {
+            MatPool.shared().reportLeaks();
+        }
+        MatPool.shared().clear();
     }
 
     public void openGallery(View v) {
@@ -58,11 +87,12 @@ public class PhotoPickActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
 
         if (requestCode == GALLERY_PICK_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
-            Uri imageUri = data.getData();
-            imageView.setImageURI(imageUri);
+            runner.cancel();
+            progressBar.setVisibility(View.GONE);
+            imageUri = data.getData();
             try {
-                bitmap = MediaStore.Images.Media.getBitmap(this.getContentResolver(), imageUri);
-                original = bitmap.copy(bitmap.getConfig(), false);
+                bitmap = BitmapDecoder.decodeSampled(getContentResolver(), imageUri, (int) ImageProcessing.FINAL_SIZE);
+                original = bitmap;
                 contour = null;
             } catch (IOException e) {
                 Log.e(PhotoPickActivity.class.getSimpleName(), e.getMessage());
@@ -72,67 +102,151 @@ public class PhotoPickActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Previews the scan on the subsampled image, the full resolution is only decoded by {@link #export(View)}
+     */
     public void apply(View v) {
-        float scale = imageView.getScale();
         if (original != null) {
-            Mat src = new Mat();
-
-            Utils.bitmapToMat(original, src);
-
-            MatBuilder dst = new MatBuilder(src)
-                    .resizeIfNecessary()
-                    .gaussian3()
-                    .rgbToGray()
-                    .bestApproach();
-
-            Bitmap dstBitmap = Bitmap.createBitmap(dst.getMat().width(), dst.getMat().height(), Bitmap.Config.RGB_565);
-            Utils.matToBitmap(dst.getMat(), dstBitmap);
-
-            contour = dstBitmap;
+            Bitmap source = original;
+            process("contour", () -> toMat(source), true, MatBuilder::bestApproachTwoPass);
         }
-
-        imageView.setImageBitmap(contour);
-        imageView.setScale(scale);
     }
 
     public void inpaint(View v) {
-
         if (contour != null || original != null) {
-
-            Mat src = new Mat();
-
-            Utils.bitmapToMat(contour != null ? contour : original, src);
-
-            MatBuilder dst = new MatBuilder(src).resizeIfNecessary().inpaint();
-
-            Bitmap dstBitmap = Bitmap.createBitmap(dst.getMat().width(), dst.getMat().height(), Bitmap.Config.RGB_565);
-            Utils.matToBitmap(dst.getMat(), dstBitmap);
-
-            contour = dstBitmap;
-
-            imageView.setImageBitmap(contour);
+            Bitmap source = contour != null ? contour : original;
+            process("inpaint", () -> toMat(source), false, builder -> builder
+                    .resizeIfNecessary()
+                    .inpaintMultiScale());
         }
-
     }
 
     public void enhance(View v) {
-
         if (contour != null || original != null) {
+            Bitmap source = contour != null ? contour : original;
+            process("enhance", () -> toMat(source), false, builder -> builder
+                    .resizeIfNecessary()
+                    .enhance());
+        }
+    }
+
+    /**
+     * Saves the scan of the picked image at full resolution to the app's pictures folder. This is the only place
+     * the full image is decoded, straight into a Mat; the quad is found on the subsampled original and only the
+     * tiled warp reads the full image
+     */
+    public void export(View v) {
+        if (imageUri == null || original == null) {
+            return;
+        }
+        Uri uri = imageUri;
+        Bitmap sampled = original;
+        File file = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES),
+                "scan_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".jpg");
+
+        progressBar.setVisibility(View.VISIBLE);
+        runner.submit("export", job -> {
+            Mat proxy = toMat(sampled);
+            Mat full = BitmapDecoder.decodeFull(getContentResolver(), uri);
+            Mat scan = null;
+            try {
+                job.checkCancelled();
+                scan = ImageProcessing.bestApproachTwoPass(full, proxy, ImageProcessing.DETECTION_SIZE, job::isCancelled);
+                // both are BGR, which is what imwrite expects; without a quad the photo is saved as it is
+                if (!Imgcodecs.imwrite(file.getPath(), scan != null ? scan : full)) {
+                    throw new IOException("Can't write " + file);
+                }
+                return file;
+            } finally {
+                proxy.release();
+                full.release();
+                if (scan != null) {
+                    scan.release();
+                }
+            }
+        }, new PipelineRunner.Callback<File>() {
+            @Override
+            public void onProgress(int done, int total) {
+            }
+
+            @Override
+            public void onResult(File result) {
+                progressBar.setVisibility(View.GONE);
+                Toast.makeText(PhotoPickActivity.this, "Saved to " + result.getPath(), Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                progressBar.setVisibility(View.GONE);
+                Toast.makeText(PhotoPickActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+            }
 
-            Mat src = new Mat();
+            @Override
+            public void onDiscard(File result) {
+            }
+        });
+    }
 
-            Utils.bitmapToMat(contour != null ? contour : original, src);
+    private static Mat toMat(Bitmap bitmap) {
+        Mat mat = new Mat();
+        Utils.bitmapToMat(bitmap, mat);
+        return mat;
+    }
 
-            MatBuilder dst = new MatBuilder(src).resizeIfNecessary().enhance();
+    /**
+     * Loads the input of a pipeline, on the worker thread
+     */
+    private interface Source {
+        Mat load() throws IOException;
+    }
 
-            Bitmap dstBitmap = Bitmap.createBitmap(dst.getMat().width(), dst.getMat().height(), Bitmap.Config.RGB_565);
-            Utils.matToBitmap(dst.getMat(), dstBitmap);
+    /**
+     * Runs the pipeline over the loaded Mat in the background and shows the result as the new contour.
+     * A new request cancels the one running, tapping the same button again while it runs does nothing
+     */
+    private void process(String key, Source source, boolean keepScale, Function<MatBuilder, MatBuilder> pipeline) {
+        progressBar.setProgress(0);
+        progressBar.setVisibility(View.VISIBLE);
+
+        runner.submit(key, job -> {
+            Mat src = source.load();
+
+            try (MatBuilder dst = pipeline.apply(MatBuilder.lazy(src).listener(job.stepListener()).cancellation(job::isCancelled))) {
+                Bitmap dstBitmap = Bitmap.createBitmap(dst.getMat().width(), dst.getMat().height(), Bitmap.Config.RGB_565);
+                Utils.matToBitmap(dst.getMat(), dstBitmap);
+                return dstBitmap;
+            } finally {
+                src.release();
+            }
+        }, new PipelineRunner.Callback<Bitmap>() {
+            @Override
+            public void onProgress(int done, int total) {
+                progressBar.setMax(total);
+                progressBar.setProgress(done);
+            }
 
-            contour = dstBitmap;
+            @Override
+            public void onResult(Bitmap result) {
+                float scale = imageView.getScale();
+                contour = result;
+                imageView.setImageBitmap(contour);
+                if (keepScale) {
+                    imageView.setScale(scale);
+                }
+                progressBar.setVisibility(View.GONE);
+            }
 
-            imageView.setImageBitmap(contour);
-        }
+            @Override
+            public void onError(Exception e) {
+                progressBar.setVisibility(View.GONE);
+                Toast.makeText(PhotoPickActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+            }
 
+            @Override
+            public void onDiscard(Bitmap result) {
+                result.recycle();
+            }
+        });
     }
 
 //    public void inpaint(View v) {
@@ -1,6 +1,7 @@
 package br.unb.cic.opencv.activity;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.SurfaceView;
@@ -9,31 +10,74 @@ import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.JavaCameraView;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import br.unb.cic.opencv.R;
+import br.unb.cic.opencv.util.CornerTracker;
+import br.unb.cic.opencv.util.FrameStats;
+import br.unb.cic.opencv.util.ImageProcessing;
+import br.unb.cic.opencv.util.MatArena;
+import br.unb.cic.opencv.util.Square;
 
 import static org.opencv.core.Core.BORDER_DEFAULT;
 import static org.opencv.core.Core.addWeighted;
 import static org.opencv.core.Core.convertScaleAbs;
 import static org.opencv.core.CvType.CV_16S;
-import static org.opencv.imgproc.Imgproc.COLOR_BGR2GRAY;
 import static org.opencv.imgproc.Imgproc.GaussianBlur;
+import static org.opencv.imgproc.Imgproc.INTER_AREA;
 import static org.opencv.imgproc.Imgproc.Sobel;
-import static org.opencv.imgproc.Imgproc.cvtColor;
+import static org.opencv.imgproc.Imgproc.resize;
 
 public class RealTimeProcessActivity extends AppCompatActivity implements CameraBridgeViewBase.CvCameraViewListener2 {
 
+    /**
+     * Bounds of the largest side of the frame copy the quad detector works on
+     */
+    private static final int MIN_DETECTION_SIZE = 160, MAX_DETECTION_SIZE = 480;
+
+    /**
+     * A detection slower than this shrinks the next frame copy, a much faster one grows it
+     */
+    private static final long DETECTION_BUDGET_MS = 50;
+
+    /**
+     * Frames the corners are only tracked for before a full detection checks them again
+     */
+    private static final int REDETECT_INTERVAL = 30;
+
+    private static final Size GAUSSIAN_3 = new Size(3, 3);
+
     private CameraBridgeViewBase cameraBridgeViewBase;
 
-    private Mat mat1, mat2, mat3;
+    private final MatArena arena = new MatArena();
+    private final FrameStats frameStats = new FrameStats(RealTimeProcessActivity.class.getSimpleName(), 10000);
 
     private static String activityName = RealTimeProcessActivity.class.getSimpleName();
 
     private BaseLoaderCallback baseLoaderCallback;
 
+    private volatile boolean scanning;
+    private final ExecutorService detector = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean detecting = new AtomicBoolean(false);
+    private final AtomicReference<Detection> detected = new AtomicReference<>();
+    private Mat detectionGray;
+    private volatile int detectionSize = 320;
+
+    /**
+     * Frame of a consumed detection, kept by the camera thread to copy the next detection frame into
+     */
+    private Mat spareFrame;
+
+    private CornerTracker tracker;
+    private Size trackingFrameSize;
+    private double trackingScale;
+
     // Used to load the 'native-lib' library on application startup.
     static {
         System.loadLibrary("native-lib");
@@ -47,6 +91,7 @@ public class RealTimeProcessActivity extends AppCompatActivity implements Camera
         cameraBridgeViewBase = (JavaCameraView) findViewById(R.id.myCameraView);
         cameraBridgeViewBase.setVisibility(SurfaceView.VISIBLE);
         cameraBridgeViewBase.setCvCameraViewListener(this);
+        cameraBridgeViewBase.setOnClickListener(v -> scanning = !scanning);
 
         baseLoaderCallback = new BaseLoaderCallback(this) {
             @Override
@@ -65,37 +110,149 @@ public class RealTimeProcessActivity extends AppCompatActivity implements Camera
 
     @Override
     public void onCameraViewStarted(int width, int height) {
-        mat1 = new Mat(width, height, CvType.CV_8UC4);
-        mat2 = new Mat(width, height, CvType.CV_8UC4);
-        mat3 = new Mat(width, height, CvType.CV_8UC4);
+        frameStats.start();
+        detectionGray = new Mat();
+        tracker = new CornerTracker(REDETECT_INTERVAL);
     }
 
     @Override
     public void onCameraViewStopped() {
-        mat1.release();
-        mat2.release();
-        mat3.release();
+        arena.release();
+        tracker.release();
+        if (spareFrame != null) {
+            spareFrame.release();
+            spareFrame = null;
+        }
+        // the detector may still be reading its frame, let it release the Mats after it is done
+        Mat gray = detectionGray;
+        detector.execute(() -> {
+            gray.release();
+            Detection result = detected.getAndSet(null);
+            if (result != null) {
+                result.frame.release();
+            }
+        });
     }
 
     @Override
     public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
-        mat1 = inputFrame.rgba();
-        GaussianBlur(mat1, mat1, new Size(3, 3), 0, 0, BORDER_DEFAULT);
+        frameStats.frameStarted();
+        // the Mat returned last frame has been drawn by now, everything can be borrowed again
+        arena.reset();
 
-        cvtColor(mat1, mat2, COLOR_BGR2GRAY);
+        // gray() is the luma plane of the camera frame, only the scan preview pays for the colour conversion
+        Mat out;
+        if (scanning) {
+            out = scan(inputFrame.gray(), inputFrame.rgba());
+        } else {
+            tracker.reset();
+            // a detection that finishes after scanning stopped must not seed the next scan
+            Detection stale = detected.getAndSet(null);
+            if (stale != null) {
+                recycle(stale.frame);
+            }
+            out = edges(inputFrame.gray());
+        }
+
+        frameStats.frameFinished();
+        return out;
+    }
+
+    private Mat edges(Mat luma) {
+        // the luma plane belongs to the camera frame, blur into a copy
+        Mat gray = arena.borrow();
+        GaussianBlur(luma, gray, GAUSSIAN_3, 0, 0, BORDER_DEFAULT);
 
-        Mat grad_x = new Mat(), grad_y = new Mat();
-        Mat abs_grad_x = new Mat(), abs_grad_y = new Mat();
+        Mat grad_x = arena.borrow(), grad_y = arena.borrow();
+        Mat abs_grad_x = arena.borrow(), abs_grad_y = arena.borrow();
 
         int ddepth = CV_16S, scale = 1, delta = 0;
-        Sobel(mat2, grad_x, ddepth, 1, 0, 3, scale, delta, BORDER_DEFAULT);
-        Sobel(mat2, grad_y, ddepth, 0, 1, 3, scale, delta, BORDER_DEFAULT);
+        Sobel(gray, grad_x, ddepth, 1, 0, 3, scale, delta, BORDER_DEFAULT);
+        Sobel(gray, grad_y, ddepth, 0, 1, 3, scale, delta, BORDER_DEFAULT);
 
         convertScaleAbs(grad_x, abs_grad_x);
         convertScaleAbs(grad_y, abs_grad_y);
 
-        addWeighted(abs_grad_x, 0.5, abs_grad_y, 0.5, 0, mat3);
-        return mat3;
+        Mat edges = arena.borrow();
+        addWeighted(abs_grad_x, 0.5, abs_grad_y, 0.5, 0, edges);
+        return edges;
+    }
+
+    /**
+     * Follows the page corners with the tracker and draws them over the colour frame. A downscaled copy of the
+     * luma goes to the detector only when the tracker lost the page or is due for a check; the camera thread
+     * never waits for it, its result seeds the tracker on a later frame
+     */
+    private Mat scan(Mat luma, Mat rgba) {
+        Detection result = detected.getAndSet(null);
+        if (result != null) {
+            // tracking starts on the frame the corners were found in and catches up on this frame
+            if (result.square != null) {
+                tracker.seed(result.frame, result.square);
+                trackingScale = result.scale;
+                trackingFrameSize = result.size;
+            }
+            recycle(result.frame);
+        }
+
+        Square square = null;
+        if (tracker.isTracking()) {
+            Mat small = arena.borrow();
+            resize(luma, small, trackingFrameSize, 0, 0, INTER_AREA);
+            square = tracker.track(small);
+        }
+
+        if (tracker.needsDetection() && detecting.compareAndSet(false, true)) {
+            double scale = detectionSize / (double) Math.max(luma.width(), luma.height());
+            Size size = new Size(Math.round(luma.width() * scale), Math.round(luma.height() * scale));
+            // the detector owns this frame until its result is consumed, so a later dispatch never overwrites it
+            Mat frame = spareFrame != null ? spareFrame : new Mat();
+            spareFrame = null;
+            resize(luma, frame, size, 0, 0, INTER_AREA);
+            detector.execute(() -> detect(frame, scale));
+        }
+
+        if (square != null) {
+            ImageProcessing.drawLine(rgba, square.scale(1 / trackingScale));
+        }
+        return rgba;
+    }
+
+    /**
+     * Runs on the detector thread. Always publishes a result, even without a square, so the frame goes back
+     * to the camera thread
+     */
+    private void detect(Mat frame, double scale) {
+        try {
+            long start = SystemClock.elapsedRealtime();
+
+            ImageProcessing.detectionBlur(frame, detectionGray);
+            Square square = ImageProcessing.detectSquare(detectionGray);
+            Detection stale = detected.getAndSet(new Detection(scanning ? square : null, frame, scale));
+            if (stale != null) {
+                // the camera thread hasn't consumed the previous result yet, this one is newer
+                stale.frame.release();
+            }
+
+            adjustDetectionSize(SystemClock.elapsedRealtime() - start);
+        } finally {
+            detecting.set(false);
+        }
+    }
+
+    private void recycle(Mat frame) {
+        if (spareFrame != null) {
+            spareFrame.release();
+        }
+        spareFrame = frame;
+    }
+
+    private void adjustDetectionSize(long elapsed) {
+        if (elapsed > DETECTION_BUDGET_MS) {
+            detectionSize = Math.max(MIN_DETECTION_SIZE, detectionSize * 3 / 4);
+        } else if (elapsed < DETECTION_BUDGET_MS / 2) {
+            detectionSize = Math.min(MAX_DETECTION_SIZE, detectionSize * 5 / 4);
+        }
     }
 
     @Override
@@ -118,6 +275,25 @@ public class RealTimeProcessActivity extends AppCompatActivity implements Camera
         if (cameraBridgeViewBase != null) {
             cameraBridgeViewBase.disableView();
         }
+        detector.shutdown();
+    }
+
+    /**
+     * Result of one detection, published as a whole so the corners always come with the frame and scale they
+     * were found at
+     */
+    private static final class Detection {
+        final Square square;
+        final Mat frame;
+        final double scale;
+        final Size size;
+
+        Detection(Square square, Mat frame, double scale) {
+            this.square = square;
+            this.frame = frame;
+            this.scale = scale;
+            this.size = frame.size();
+        }
     }
 
     private void checkOpenCV() {
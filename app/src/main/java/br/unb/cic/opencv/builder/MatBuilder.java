@@ -1,63 +1,275 @@
 package br.unb.cic.opencv.builder;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import br.unb.cic.opencv.util.Enhancer;
 import br.unb.cic.opencv.util.ImageProcessing;
+import br.unb.cic.opencv.util.Workers;
 
-public class MatBuilder {
+/**
+ * Chains ImageProcessing steps over a Mat. Intermediates are drawn from a {@link MatPool} and every
+ * intermediate a step replaces is returned to it right away; the Mat given to the constructor is never
+ * released. {@link #getMat()} stays valid until the builder is closed.
+ * <p>
+ * A builder made with {@link #lazy(Mat)} only records its steps; {@link #execute()}, or any accessor, runs
+ * them after {@link StageGraph#optimise()} has reordered and fused them.
+ */
+public class MatBuilder implements AutoCloseable {
+    private final MatPool pool;
+    private final StageGraph pending;
+    private StepListener listener;
+    private BooleanSupplier cancelled = Workers.NEVER_CANCELLED;
     private Mat mat;
     private Mat original;
 
     public MatBuilder(Mat mat){
+        this(mat, MatPool.shared());
+    }
+
+    public MatBuilder(Mat mat, MatPool pool){
+        this(mat, pool, false);
+    }
+
+    private MatBuilder(Mat mat, MatPool pool, boolean lazy){
+        this.pool = pool;
+        this.pending = lazy ? new StageGraph() : null;
         this.mat = mat;
         this.original = mat;
     }
 
+    public static MatBuilder lazy(Mat mat) {
+        return lazy(mat, MatPool.shared());
+    }
+
+    public static MatBuilder lazy(Mat mat, MatPool pool) {
+        return new MatBuilder(mat, pool, true);
+    }
+
     public Mat getMat() {
+        execute();
         return mat;
     }
 
     public Mat getOriginal() {
+        execute();
         return original;
     }
 
-    public MatBuilder rgbToGray(){
-        ImageProcessing.convertToGray(this.mat);
+    /**
+     * Returns the current Mat and takes it out of the pool, the caller has to release it
+     */
+    public Mat build() {
+        execute();
+        return pool.detach(mat);
+    }
+
+    /**
+     * Called before every stage runs and once after the last one of an {@link #execute()}
+     */
+    public interface StepListener {
+        /**
+         * @param stage the stage about to run, null once all of them ran
+         * @param done  stages already run
+         * @param total stages in the plan, 0 for a builder that isn't lazy
+         * @throws java.util.concurrent.CancellationException to stop the builder, the stages left are dropped
+         */
+        void onStep(Stage stage, int done, int total);
+    }
+
+    public MatBuilder listener(StepListener listener) {
+        this.listener = listener;
         return this;
     }
 
-    public MatBuilder sobel(){
-        this.mat = ImageProcessing.sobelFilter(this.mat);
+    /**
+     * Checked inside the long stages (two pass warp, inpainting, enhance), which stop with a
+     * CancellationException once it returns true instead of running to the end
+     */
+    public MatBuilder cancellation(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
         return this;
     }
-    public MatBuilder canny(){
-        this.mat = ImageProcessing.canny(this.mat);
+
+    /**
+     * Runs the stages recorded so far. Does nothing for a builder that isn't lazy
+     */
+    public MatBuilder execute() {
+        if (pending != null && !pending.isEmpty()) {
+            StageGraph plan = pending.optimise();
+            pending.clear();
+            List<StageGraph.Node> nodes = plan.nodes();
+            for (int i = 0; i < nodes.size(); i++) {
+                report(nodes.get(i).stage, i, nodes.size());
+                run(nodes.get(i));
+            }
+            report(null, nodes.size(), nodes.size());
+        }
         return this;
     }
 
+    public MatBuilder rgbToGray(){
+        return stage(Stage.RGB_TO_GRAY);
+    }
+
+    public MatBuilder sobel(){
+        return stage(Stage.SOBEL);
+    }
+
+    public MatBuilder canny(){
+        return stage(Stage.CANNY);
+    }
+
     public MatBuilder gaussian3(){
-        this.mat = ImageProcessing.gaussian3(this.mat);
-        return this;
+        return stage(Stage.GAUSSIAN_3);
     }
 
     public MatBuilder resizeIfNecessary() {
-        this.mat = ImageProcessing.resizeIfNecessary(this.mat);
-        this.original = this.mat;
-        return this;
+        return stage(Stage.RESIZE);
     }
 
     public MatBuilder bestApproach() {
-        this.mat = ImageProcessing.bestApproach(this.mat, original);
-        return this;
+        return stage(Stage.BEST_APPROACH);
+    }
+
+    /**
+     * Detects the quad on a small proxy of the current Mat and warps it at full resolution
+     */
+    public MatBuilder bestApproachTwoPass() {
+        return stage(Stage.BEST_APPROACH_TWO_PASS);
     }
 
     public MatBuilder inpaint() {
-        this.mat = ImageProcessing.inpaint(this.mat);
-        return this;
+        return stage(Stage.INPAINT);
+    }
+
+    public MatBuilder inpaintMultiScale() {
+        return stage(Stage.INPAINT_MULTI_SCALE);
     }
 
     public MatBuilder enhance() {
-        this.mat = ImageProcessing.enhance(this.mat);
+        return enhance(Enhancer.DEFAULT_THRESHOLD);
+    }
+
+    public MatBuilder enhance(int threshold) {
+        return enhance(threshold, Workers.DEFAULT_PARALLELISM);
+    }
+
+    public MatBuilder enhance(int threshold, int parallelism) {
+        return stage(Stage.ENHANCE, threshold, parallelism);
+    }
+
+    /**
+     * Returns every intermediate still held by the builder to the pool, stages that never ran are dropped
+     */
+    @Override
+    public void close() {
+        if (pending != null) {
+            pending.clear();
+        }
+        pool.release(mat);
+        pool.release(original);
+        mat = original = null;
+    }
+
+    private MatBuilder stage(Stage stage, int... args) {
+        if (pending != null) {
+            pending.add(stage, args);
+        } else {
+            report(stage, 0, 0);
+            run(new StageGraph.Node(stage, args, false));
+        }
         return this;
     }
-}
\ No newline at end of file
+
+    private void run(StageGraph.Node node) {
+        Mat dst;
+        switch (node.stage) {
+            case RGB_TO_GRAY:
+                if (pending != null && mat.channels() == 1) {
+                    return;
+                }
+                dst = pool.acquire(mat.rows(), mat.cols(), CvType.CV_8UC1);
+                ImageProcessing.convertToGray(this.mat, dst);
+                setMat(dst);
+                break;
+            case SOBEL:
+                dst = pool.acquire(mat.rows(), mat.cols(), CvType.makeType(CvType.CV_8U, mat.channels()));
+                ImageProcessing.sobelFilter(this.mat, dst);
+                setMat(dst);
+                break;
+            case CANNY:
+                dst = pool.acquire(mat.rows(), mat.cols(), CvType.CV_8UC1);
+                ImageProcessing.canny(this.mat, dst);
+                setMat(dst);
+                break;
+            case GAUSSIAN_3:
+                dst = inPlace(node) ? mat : pool.acquire(mat.rows(), mat.cols(), mat.type());
+                ImageProcessing.gaussian3(this.mat, dst);
+                setMat(dst);
+                break;
+            case RESIZE:
+                Size size = ImageProcessing.resizedSize(this.mat, ImageProcessing.FINAL_SIZE);
+                if (size != null) {
+                    dst = pool.acquire((int) size.height, (int) size.width, mat.type());
+                    Imgproc.resize(this.mat, dst, size);
+                    setMat(dst);
+                }
+                setOriginal(this.mat);
+                break;
+            case BEST_APPROACH:
+                setMat(pool.adopt(ImageProcessing.bestApproach(this.mat, original)));
+                break;
+            case BEST_APPROACH_TWO_PASS:
+                setMat(pool.adopt(ImageProcessing.bestApproachTwoPass(this.mat, ImageProcessing.DETECTION_SIZE, cancelled)));
+                break;
+            case INPAINT:
+                setMat(pool.adopt(ImageProcessing.inpaint(this.mat, cancelled)));
+                break;
+            case INPAINT_MULTI_SCALE:
+                setMat(pool.adopt(ImageProcessing.inpaintMultiScale(this.mat, cancelled)));
+                break;
+            case ENHANCE:
+                if (pending != null && !inPlace(node)) {
+                    dst = pool.acquire(mat.rows(), mat.cols(), mat.type());
+                    this.mat.copyTo(dst);
+                    setMat(dst);
+                }
+                setMat(ImageProcessing.enhance(this.mat, node.args[0], node.args[1], cancelled));
+                break;
+        }
+    }
+
+    private void report(Stage stage, int done, int total) {
+        if (listener != null) {
+            listener.onStep(stage, done, total);
+        }
+    }
+
+    /**
+     * Whether the stage may overwrite the current Mat: the optimiser fused it and no one else holds the buffer
+     */
+    private boolean inPlace(StageGraph.Node node) {
+        return node.fused && pool.isExclusive(mat);
+    }
+
+    private void setMat(Mat result) {
+        if (result == mat) return;
+        Mat previous = mat;
+        mat = result;
+        pool.release(previous);
+    }
+
+    private void setOriginal(Mat result) {
+        if (result == original) return;
+        pool.retain(result);
+        Mat previous = original;
+        original = result;
+        pool.release(previous);
+    }
+}
@@ -0,0 +1,205 @@
+package br.unb.cic.opencv.builder;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Reference counted pool of Mats, keyed by rows, cols and type.
+ * <p>
+ * A Mat taken with {@link #acquire} or handed over with {@link #adopt} starts with one reference; when the last
+ * reference is released the Mat goes back to the idle list of its key, or its native memory is freed right away
+ * if that list is full. In debug mode the pool remembers where every leased Mat was acquired, so the ones that
+ * were never returned can be reported.
+ */
+public class MatPool {
+
+    private static final String TAG = MatPool.class.getSimpleName();
+    private static final int MAX_IDLE_PER_KEY = 2;
+
+    private static final MatPool SHARED = new MatPool(MAX_IDLE_PER_KEY);
+
+    private final int maxIdlePerKey;
+    private final Map<Key, ArrayDeque<Mat>> idle = new HashMap<>();
+    private final Map<Mat, Lease> leased = new IdentityHashMap<>();
+
+    private boolean debug;
+    private long hits, misses;
+
+    public MatPool(int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    public static MatPool shared() {
+        return SHARED;
+    }
+
+    public synchronized void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        ArrayDeque<Mat> mats = idle.get(new Key(rows, cols, type));
+        Mat mat = mats == null ? null : mats.poll();
+
+        if (mat == null) {
+            misses++;
+            mat = new Mat(rows, cols, type);
+        } else {
+            hits++;
+        }
+
+        leased.put(mat, new Lease(debug));
+        return mat;
+    }
+
+    /**
+     * Takes ownership of a Mat allocated elsewhere, it is pooled when its last reference is released
+     */
+    public synchronized Mat adopt(Mat mat) {
+        Lease lease = leased.get(mat);
+        if (lease != null) {
+            lease.references++;
+        } else {
+            leased.put(mat, new Lease(debug));
+        }
+        return mat;
+    }
+
+    public synchronized void retain(Mat mat) {
+        Lease lease = leased.get(mat);
+        if (lease != null) {
+            lease.references++;
+        }
+    }
+
+    /**
+     * Drops one reference. Mats the pool doesn't own are ignored, so callers can release inputs blindly
+     */
+    public synchronized void release(Mat mat) {
+        Lease lease = leased.get(mat);
+        if (lease == null || --lease.references > 0) {
+            return;
+        }
+        leased.remove(mat);
+
+        if (mat.empty()) {
+            mat.release();
+            return;
+        }
+
+        Key key = new Key(mat.rows(), mat.cols(), mat.type());
+        ArrayDeque<Mat> mats = idle.get(key);
+        if (mats == null) {
+            mats = new ArrayDeque<>();
+            idle.put(key, mats);
+        }
+
+        if (mats.size() < maxIdlePerKey) {
+            mats.push(mat);
+        } else {
+            mat.release();
+        }
+    }
+
+    /**
+     * Whether the pool owns the Mat and it has a single reference, so its holder may overwrite it
+     */
+    public synchronized boolean isExclusive(Mat mat) {
+        Lease lease = leased.get(mat);
+        return lease != null && lease.references == 1;
+    }
+
+    /**
+     * Gives up ownership of the Mat without freeing it, the caller becomes responsible for releasing it
+     */
+    public synchronized Mat detach(Mat mat) {
+        leased.remove(mat);
+        return mat;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized double hitRate() {
+        return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+    }
+
+    public synchronized int leased() {
+        return leased.size();
+    }
+
+    /**
+     * Logs every Mat that is still leased (with its acquisition site in debug mode) and the hit rate.
+     * Returns the number of Mats that were never returned
+     */
+    public synchronized int reportLeaks() {
+        for (Map.Entry<Mat, Lease> entry : leased.entrySet()) {
+            Mat mat = entry.getKey();
+            Lease lease = entry.getValue();
+            String message = "Mat " + mat.rows() + "x" + mat.cols() + " type " + mat.type() + " was never returned ("
+                    + lease.references + " references)";
+            if (lease.site != null) {
+                Log.w(TAG, message, lease.site);
+            } else {
+                Log.w(TAG, message);
+            }
+        }
+        Log.i(TAG, String.format("%d hits, %d misses (%.0f%% hit rate), %d leased", hits, misses, 100 * hitRate(), leased.size()));
+        return leased.size();
+    }
+
+    /**
+     * Frees every idle Mat
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Mat> mats : idle.values()) {
+            for (Mat mat : mats) {
+                mat.release();
+            }
+        }
+        idle.clear();
+    }
+
+    private static class Lease {
+        int references = 1;
+        final Throwable site;
+
+        Lease(boolean debug) {
+            site = debug ? new Throwable("acquired here") : null;
+        }
+    }
+
+    private static class Key {
+        final int rows, cols, type;
+
+        Key(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return rows == key.rows && cols == key.cols && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (rows * 31 + cols) * 31 + type;
+        }
+    }
+}
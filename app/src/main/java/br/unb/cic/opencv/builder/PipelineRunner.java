@@ -0,0 +1,229 @@
+package br.unb.cic.opencv.builder;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs image pipelines off the UI thread on a bounded pool of workers.
+ * <p>
+ * Only the latest job matters: submitting a job cancels the one before it, and submitting the same key while that
+ * job is still running is ignored, so repeated taps on a button coalesce into one job. Cancellation is cooperative,
+ * a job stops at its next {@link Job#checkCancelled()}, which the {@link MatBuilder.StepListener} a job hands out
+ * calls between stages; long stages also poll {@link Job#isCancelled()} through {@link MatBuilder#cancellation}.
+ * Progress and results are posted to the main thread, and only for the current job. A result that arrives for a
+ * cancelled or superseded job goes to {@link Callback#onDiscard} instead, so it can be freed.
+ */
+public class PipelineRunner {
+
+    private static final String TAG = PipelineRunner.class.getSimpleName();
+
+    /**
+     * Work of a job, run on a worker thread. The result is handed to {@link Callback#onResult} on the main thread
+     */
+    public interface Task<T> {
+        T run(Job job) throws Exception;
+    }
+
+    /**
+     * Methods are called on the main thread. Only onDiscard is called for a job that was superseded or cancelled
+     */
+    public interface Callback<T> {
+        void onProgress(int done, int total);
+
+        void onResult(T result);
+
+        void onError(Exception e);
+
+        /**
+         * Receives the result of a job that finished after it was cancelled or superseded, instead of onResult
+         */
+        void onDiscard(T result);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private Job current;
+
+    public PipelineRunner(int workers, int queueCapacity) {
+        executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), PipelineRunner::discardOldest);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts the task unless a job with the same key is still running, cancelling any other job.
+     * Must be called from the main thread. Returns the job that will deliver the result
+     */
+    public <T> Job submit(String key, Task<T> task, Callback<T> callback) {
+        if (current != null && !current.isFinished()) {
+            if (current.key.equals(key)) {
+                return current;
+            }
+            current.cancel();
+        }
+
+        Job job = new Job(key);
+        current = job;
+        try {
+            executor.execute(new Run(job, () -> run(job, task, callback)));
+        } catch (RejectedExecutionException e) {
+            job.finished = true;
+            callback.onError(e);
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the current job, if any
+     */
+    public void cancel() {
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public boolean isBusy() {
+        return current != null && !current.isFinished();
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private <T> void run(Job job, Task<T> task, Callback<T> callback) {
+        try {
+            job.checkCancelled();
+            job.progress = (done, total) -> deliver(job, () -> callback.onProgress(done, total));
+            T result = task.run(job);
+            main.post(() -> {
+                if (job.isCancelled() || job != current) {
+                    callback.onDiscard(result);
+                } else {
+                    callback.onResult(result);
+                }
+            });
+        } catch (CancellationException e) {
+            Log.d(TAG, "Job " + job.key + " cancelled");
+        } catch (Exception e) {
+            Log.e(TAG, "Job " + job.key + " failed", e);
+            deliver(job, () -> callback.onError(e));
+        } finally {
+            job.finished = true;
+        }
+    }
+
+    /**
+     * Posts the delivery to the main thread, where it is dropped if the job was cancelled meanwhile
+     */
+    private void deliver(Job job, Runnable delivery) {
+        main.post(() -> {
+            if (job.isCancelled() || job != current) {
+                return;
+            }
+            delivery.run();
+        });
+    }
+
+    /**
+     * Drops the oldest queued job to make room, like {@link ThreadPoolExecutor.DiscardOldestPolicy}, and marks the
+     * job that will never run as finished
+     */
+    private static void discardOldest(Runnable run, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            ((Run) run).job.finished = true;
+            return;
+        }
+        Run oldest = (Run) executor.getQueue().poll();
+        if (oldest != null) {
+            oldest.job.finished = true;
+            Log.d(TAG, "Job " + oldest.job.key + " dropped from the queue");
+        }
+        executor.execute(run);
+    }
+
+    /**
+     * Queue entry, keeps the job so a dropped entry can be marked finished
+     */
+    private static class Run implements Runnable {
+        final Job job;
+        private final Runnable body;
+
+        Run(Job job, Runnable body) {
+            this.job = job;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+    }
+
+    public static class Job {
+        final String key;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile ProgressSink progress;
+
+        Job(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isFinished() {
+            return finished || cancelled;
+        }
+
+        /**
+         * Throws CancellationException if the job was cancelled, tasks call it between expensive steps
+         */
+        public void checkCancelled() {
+            if (cancelled) {
+                throw new CancellationException("Job " + key + " was cancelled");
+            }
+        }
+
+        public void progress(int done, int total) {
+            ProgressSink sink = progress;
+            if (sink != null) {
+                sink.onProgress(done, total);
+            }
+        }
+
+        /**
+         * Listener for the MatBuilder of the job: checks for cancellation before each stage and reports progress
+         */
+        public MatBuilder.StepListener stepListener() {
+            return (stage, done, total) -> {
+                checkCancelled();
+                if (total > 0) {
+                    progress(done, total);
+                }
+            };
+        }
+    }
+
+    private interface ProgressSink {
+        void onProgress(int done, int total);
+    }
+}
@@ -0,0 +1,33 @@
+package br.unb.cic.opencv.builder;
+
+/**
+ * The steps a {@link MatBuilder} can record, with what the {@link StageGraph} optimiser needs to know about them
+ */
+public enum Stage {
+    RESIZE(false, false),
+    GAUSSIAN_3(true, true),
+    RGB_TO_GRAY(false, false),
+    SOBEL(false, false),
+    CANNY(false, false),
+    BEST_APPROACH(false, false),
+    BEST_APPROACH_TWO_PASS(false, false),
+    INPAINT(false, false),
+    INPAINT_MULTI_SCALE(false, false),
+    ENHANCE(true, false);
+
+    /**
+     * Whether the stage can write its result over its input
+     */
+    final boolean inPlace;
+
+    /**
+     * Whether the stage is a linear filter applied to each channel alike, so it gives the same result
+     * before or after a gray conversion
+     */
+    final boolean commutesWithGray;
+
+    Stage(boolean inPlace, boolean commutesWithGray) {
+        this.inPlace = inPlace;
+        this.commutesWithGray = commutesWithGray;
+    }
+}
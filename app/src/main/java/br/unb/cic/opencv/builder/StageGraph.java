@@ -0,0 +1,105 @@
+package br.unb.cic.opencv.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stages recorded by a lazy {@link MatBuilder}, in call order, and the optimiser that rewrites them before they run.
+ * <p>
+ * {@link #optimise()} moves gray conversions ahead of the blurs that precede them, so the blur runs on one channel
+ * instead of four, drops resizes and gray conversions that repeat the previous stage, and marks the in-place stages
+ * that can be fused into the buffer produced by the stage before them.
+ */
+public class StageGraph {
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    public StageGraph add(Stage stage, int... args) {
+        nodes.add(new Node(stage, args, false));
+        return this;
+    }
+
+    public List<Node> nodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public void clear() {
+        nodes.clear();
+    }
+
+    /**
+     * Returns an equivalent, cheaper graph. A resize is a barrier: it defines the original Mat later stages warp,
+     * which has to keep its colours, so nothing is moved across it
+     */
+    public StageGraph optimise() {
+        List<Node> plan = new ArrayList<>(nodes.size());
+
+        for (Node node : nodes) {
+            if (node.stage == Stage.RGB_TO_GRAY) {
+                int at = plan.size();
+                while (at > 0 && plan.get(at - 1).stage.commutesWithGray) {
+                    at--;
+                }
+                plan.add(at, node);
+            } else {
+                plan.add(node);
+            }
+        }
+
+        StageGraph optimised = new StageGraph();
+        Stage previous = null;
+        for (Node node : plan) {
+            boolean repeated = node.stage == previous && (node.stage == Stage.RESIZE || node.stage == Stage.RGB_TO_GRAY);
+            if (repeated) {
+                continue;
+            }
+
+            boolean fused = node.stage.inPlace && previous != null && previous != Stage.RESIZE;
+            optimised.nodes.add(new Node(node.stage, node.args, fused));
+            previous = node.stage;
+        }
+
+        return optimised;
+    }
+
+    @Override
+    public String toString() {
+        return nodes.toString();
+    }
+
+    public static class Node {
+        final Stage stage;
+        final int[] args;
+
+        /**
+         * Set by the optimiser when the stage may write over the buffer the previous stage produced
+         */
+        final boolean fused;
+
+        Node(Stage stage, int[] args, boolean fused) {
+            this.stage = stage;
+            this.args = args;
+            this.fused = fused;
+        }
+
+        public Stage stage() {
+            return stage;
+        }
+
+        public boolean isFused() {
+            return fused;
+        }
+
+        @Override
+        public String toString() {
+            String name = args.length == 0 ? stage.name() : stage.name() + Arrays.toString(args);
+            return fused ? name + "*" : name;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package br.unb.cic.opencv.gl;
+
+import android.opengl.GLES20;
+
+import org.opencv.android.CameraGLRendererBase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import br.unb.cic.opencv.util.EdgeKernel;
+
+/**
+ * Gaussian 3x3 + Sobel edge preview done in two fragment shader passes over the camera texture, see
+ * {@link EdgeKernel} for the same computation in plain Java. The blurred luma of the first pass can also be
+ * read back at a small size for the quad detector, and the last quad found is drawn over the edges.
+ * <p>
+ * Every method but {@link #requestReadback} and {@link #setQuad} has to run on the GL thread. The GL objects
+ * belong to the context they were made in, so a new EdgePass is needed once that context is lost.
+ */
+public class EdgePass {
+
+    public interface ReadbackListener {
+        /**
+         * Called on the GL thread, the pixels are RGBA with the luma in every channel and the bottom row
+         * first, as glReadPixels returns them; the array is reused by the next readback
+         */
+        void onReadback(byte[] rgba, int width, int height);
+    }
+
+    private static final String VERTEX = ""
+            + "attribute vec2 vPosition;\n"
+            + "attribute vec2 vTexCoord;\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  texCoord = vTexCoord;\n"
+            + "  gl_Position = vec4(vPosition, 0.0, 1.0);\n"
+            + "}";
+
+    private static final String LUMA_GAUSSIAN = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "uniform vec2 texel;\n"
+            + "varying vec2 texCoord;\n"
+            + "float luma(float dx, float dy) {\n"
+            + "  return dot(texture2D(sTexture, texCoord + vec2(dx, dy) * texel).rgb, vec3("
+            + EdgeKernel.LUMA_R + ", " + EdgeKernel.LUMA_G + ", " + EdgeKernel.LUMA_B + "));\n"
+            + "}\n"
+            + "void main() {\n"
+            + "  float sum = luma(-1.0, -1.0) + 2.0 * luma(0.0, -1.0) + luma(1.0, -1.0)\n"
+            + "            + 2.0 * luma(-1.0, 0.0) + 4.0 * luma(0.0, 0.0) + 2.0 * luma(1.0, 0.0)\n"
+            + "            + luma(-1.0, 1.0) + 2.0 * luma(0.0, 1.0) + luma(1.0, 1.0);\n"
+            + "  gl_FragColor = vec4(vec3(sum / 16.0), 1.0);\n"
+            + "}";
+
+    private static final String SOBEL = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "uniform vec2 texel;\n"
+            + "varying vec2 texCoord;\n"
+            + "float px(float dx, float dy) {\n"
+            + "  return texture2D(sTexture, texCoord + vec2(dx, dy) * texel).r;\n"
+            + "}\n"
+            + "void main() {\n"
+            + "  float gx = px(1.0, -1.0) + 2.0 * px(1.0, 0.0) + px(1.0, 1.0)\n"
+            + "           - px(-1.0, -1.0) - 2.0 * px(-1.0, 0.0) - px(-1.0, 1.0);\n"
+            + "  float gy = px(-1.0, 1.0) + 2.0 * px(0.0, 1.0) + px(1.0, 1.0)\n"
+            + "           - px(-1.0, -1.0) - 2.0 * px(0.0, -1.0) - px(1.0, -1.0);\n"
+            + "  float edge = 0.5 * min(abs(gx), 1.0) + 0.5 * min(abs(gy), 1.0);\n"
+            + "  gl_FragColor = vec4(vec3(edge), 1.0);\n"
+            + "}";
+
+    private static final String COPY = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = texture2D(sTexture, texCoord);\n"
+            + "}";
+
+    private static final String QUAD_VERTEX = ""
+            + "attribute vec2 vPosition;\n"
+            + "void main() {\n"
+            + "  gl_Position = vec4(vPosition, 0.0, 1.0);\n"
+            + "}";
+
+    private static final String QUAD_COLOR = ""
+            + "precision mediump float;\n"
+            + "uniform vec4 color;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = color;\n"
+            + "}";
+
+    private static final float[] VERTICES = {-1, -1, -1, 1, 1, -1, 1, 1};
+    private static final float[] TEX_COORDS = {0, 0, 0, 1, 1, 0, 1, 1};
+
+    private final int readbackSize;
+    private final FloatBuffer vertices = floats(VERTICES), texCoords = floats(TEX_COORDS), quad = floats(new float[8]);
+
+    private final AtomicReference<ReadbackListener> readback = new AtomicReference<>();
+    private volatile float[] quadCorners;
+
+    private int lumaGaussian, sobel, copy, quadProgram;
+    private final int[] framebuffers = new int[3], textures = new int[2];
+    private int width, height, readbackWidth, readbackHeight;
+    private ByteBuffer readbackBuffer;
+    private byte[] readbackPixels;
+
+    /**
+     * @param readbackSize largest side of the frames handed to {@link ReadbackListener}
+     */
+    public EdgePass(int readbackSize) {
+        this.readbackSize = readbackSize;
+    }
+
+    /**
+     * Asks for the blurred luma of the next frame, the listener is called once
+     */
+    public void requestReadback(ReadbackListener listener) {
+        readback.set(listener);
+    }
+
+    /**
+     * Corners to outline in readback pixels (tl, tr, br, bl as x, y pairs), or null for none
+     */
+    public void setQuad(float[] corners) {
+        quadCorners = corners;
+    }
+
+    /**
+     * Draws the edges of texIn into texOut, both RGBA textures of the given size
+     */
+    public void draw(int texIn, int texOut, int width, int height) {
+        if (lumaGaussian == 0) {
+            createPrograms();
+        }
+        if (width != this.width || height != this.height) {
+            createTargets(width, height);
+        }
+
+        // texIn -> blurred luma
+        run(lumaGaussian, texIn, framebuffers[0], width, height);
+
+        // blurred luma -> edges
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[1]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texOut, 0);
+        run(sobel, textures[0], framebuffers[1], width, height);
+
+        float[] corners = quadCorners;
+        if (corners != null) {
+            drawQuad(corners);
+        }
+
+        ReadbackListener listener = readback.getAndSet(null);
+        if (listener != null) {
+            // blurred luma -> small frame, the linear filter averages the texels it skips
+            run(copy, textures[0], framebuffers[2], readbackWidth, readbackHeight);
+            readbackBuffer.clear();
+            GLES20.glReadPixels(0, 0, readbackWidth, readbackHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readbackBuffer);
+            readbackBuffer.get(readbackPixels);
+            listener.onReadback(readbackPixels, readbackWidth, readbackHeight);
+        }
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Deletes the GL objects, only while the context they were made in is current
+     */
+    public void release() {
+        deleteTargets();
+        GLES20.glDeleteProgram(lumaGaussian);
+        GLES20.glDeleteProgram(sobel);
+        GLES20.glDeleteProgram(copy);
+        GLES20.glDeleteProgram(quadProgram);
+        lumaGaussian = sobel = copy = quadProgram = 0;
+    }
+
+    private void createPrograms() {
+        lumaGaussian = CameraGLRendererBase.loadShader(VERTEX, LUMA_GAUSSIAN);
+        sobel = CameraGLRendererBase.loadShader(VERTEX, SOBEL);
+        copy = CameraGLRendererBase.loadShader(VERTEX, COPY);
+        quadProgram = CameraGLRendererBase.loadShader(QUAD_VERTEX, QUAD_COLOR);
+    }
+
+    private void createTargets(int width, int height) {
+        deleteTargets();
+        this.width = width;
+        this.height = height;
+
+        double scale = Math.min(1, readbackSize / (double) Math.max(width, height));
+        readbackWidth = (int) Math.round(width * scale);
+        readbackHeight = (int) Math.round(height * scale);
+        readbackBuffer = ByteBuffer.allocateDirect(readbackWidth * readbackHeight * 4).order(ByteOrder.nativeOrder());
+        readbackPixels = new byte[readbackWidth * readbackHeight * 4];
+
+        GLES20.glGenFramebuffers(framebuffers.length, framebuffers, 0);
+        GLES20.glGenTextures(textures.length, textures, 0);
+        attachTexture(framebuffers[0], textures[0], width, height);
+        attachTexture(framebuffers[2], textures[1], readbackWidth, readbackHeight);
+    }
+
+    private void deleteTargets() {
+        if (width == 0) return;
+        GLES20.glDeleteFramebuffers(framebuffers.length, framebuffers, 0);
+        GLES20.glDeleteTextures(textures.length, textures, 0);
+        width = height = 0;
+    }
+
+    private static void attachTexture(int framebuffer, int texture, int width, int height) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        // texel centres are sampled exactly, so linear filtering only matters for the downscaled readback
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+    }
+
+    /**
+     * Draws a full screen quad sampling texture with program into framebuffer
+     */
+    private void run(int program, int texture, int framebuffer, int width, int height) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glUseProgram(program);
+
+        int position = GLES20.glGetAttribLocation(program, "vPosition");
+        int texCoord = GLES20.glGetAttribLocation(program, "vTexCoord");
+        GLES20.glEnableVertexAttribArray(position);
+        GLES20.glEnableVertexAttribArray(texCoord);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 4 * 2, vertices);
+        GLES20.glVertexAttribPointer(texCoord, 2, GLES20.GL_FLOAT, false, 4 * 2, texCoords);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "sTexture"), 0);
+        int texel = GLES20.glGetUniformLocation(program, "texel");
+        if (texel >= 0) {
+            GLES20.glUniform2f(texel, 1f / this.width, 1f / this.height);
+        }
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    /**
+     * Outlines the quad over the edges, still bound to the output framebuffer
+     */
+    private void drawQuad(float[] corners) {
+        // readback pixels have the bottom row first, so rows map to clip space upwards like columns do
+        for (int i = 0; i < 8; i += 2) {
+            quad.put(i, corners[i] / readbackWidth * 2 - 1);
+            quad.put(i + 1, corners[i + 1] / readbackHeight * 2 - 1);
+        }
+
+        GLES20.glUseProgram(quadProgram);
+        int position = GLES20.glGetAttribLocation(quadProgram, "vPosition");
+        GLES20.glEnableVertexAttribArray(position);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 4 * 2, quad);
+        GLES20.glUniform4f(GLES20.glGetUniformLocation(quadProgram, "color"), 1, 0, 0, 1);
+        GLES20.glLineWidth(6);
+        GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 0, 4);
+    }
+
+    private static FloatBuffer floats(float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+}
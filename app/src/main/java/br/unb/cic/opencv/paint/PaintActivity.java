@@ -61,6 +61,12 @@ public class PaintActivity extends AppCompatActivity {
             case R.id.blur:
                 paintView.blur();
                 return true;
+            case R.id.undo:
+                paintView.undo();
+                return true;
+            case R.id.redo:
+                paintView.redo();
+                return true;
             case R.id.clear:
                 paintView.clear();
                 return true;
@@ -10,6 +10,9 @@ import android.graphics.MaskFilter;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
 import android.support.annotation.RequiresApi;
 import android.util.AttributeSet;
@@ -17,8 +20,6 @@ import android.util.DisplayMetrics;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.util.ArrayList;
-
 
 @RequiresApi(api = Build.VERSION_CODES.O)
 public class PaintView extends View {
@@ -27,10 +28,25 @@ public class PaintView extends View {
     public static final int DEFAULT_COLOR = Color.argb(1F, 1F, 0F, 0F);
     public static final int DEFAULT_BG_COLOR = Color.WHITE;
     private static final float TOUCH_TOLERANCE = 4;
+
+    /**
+     * Pixels the blur and emboss filters may paint outside the stroke
+     */
+    private static final int STROKE_HALO = 8;
+
+    /**
+     * Memory the undo history may hold in tile snapshots
+     */
+    private static final long MAX_HISTORY_BYTES = 16 * 1024 * 1024;
     private float mX, mY;
+    private float mEndX, mEndY;
     private Path mPath;
     private Paint mPaint;
-    private ArrayList<FingerPath> paths = new ArrayList<>();
+
+    /**
+     * Stroke being drawn, it's only rasterised into the mask when the finger lifts
+     */
+    private FingerPath active;
     private int currentColor;
     private boolean emboss;
     private boolean blur;
@@ -39,6 +55,10 @@ public class PaintView extends View {
     private Bitmap mBitmap, mask;
     private Canvas bg, mCanvas;
     private Paint mBitmapPaint = new Paint(Paint.DITHER_FLAG);
+    private Paint mRestorePaint = new Paint();
+    private final RectF bounds = new RectF();
+    private final Rect dirty = new Rect();
+    private StrokeHistory history;
 
     public PaintView(Context context) {
         this(context, null);
@@ -57,6 +77,11 @@ public class PaintView extends View {
         mPaint.setXfermode(null);
         mPaint.setAlpha(0xff);
 
+        mRestorePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+
+        // the stroke in progress is drawn straight on the view canvas, and hardware rendering ignores the
+        // emboss mask filter, and the blur one before API 28, so the live stroke wouldn't match the finished one
+        setLayerType(LAYER_TYPE_SOFTWARE, null);
     }
 
     public void init(DisplayMetrics metrics, Bitmap bitmap) {
@@ -73,6 +98,7 @@ public class PaintView extends View {
 
         bg = new Canvas(mBitmap);
         mCanvas = new Canvas(mask);
+        history = new StrokeHistory(new BitmapSurface(mask), MAX_HISTORY_BYTES);
 
         currentColor = DEFAULT_COLOR;
     }
@@ -100,59 +126,155 @@ public class PaintView extends View {
         blur = true;
     }
 
+    /**
+     * Drops every stroke, restoring the mask from the image
+     */
     public void clear() {
-        paths.clear();
+        active = null;
+        history.discard();
+        history.touchAll();
+        history.record();
+        mCanvas.drawBitmap(mBitmap, 0, 0, mRestorePaint);
         normal();
         invalidate();
     }
 
+    public boolean undo() {
+        if (active != null || !history.undo()) {
+            return false;
+        }
+        invalidate();
+        return true;
+    }
+
+    public boolean redo() {
+        if (active != null || !history.redo()) {
+            return false;
+        }
+        invalidate();
+        return true;
+    }
+
+    /**
+     * Draws the mask, which already holds every finished stroke, and the stroke in progress on top of it.
+     * The cost doesn't depend on how many strokes were drawn before
+     */
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.save();
-//        mCanvas.drawColor(DEFAULT_BG_COLOR, PorterDuff.Mode.ADD);
-
-        for (FingerPath fp : paths) {
-            mPaint.setColor(fp.color);
-            mPaint.setStrokeWidth(fp.strokeWidth);
-            mPaint.setMaskFilter(null);
+        canvas.drawBitmap(mask, 0, 0, mBitmapPaint);
 
-            if (fp.emboss)
-                mPaint.setMaskFilter(mEmboss);
-            else if (fp.blur)
-                mPaint.setMaskFilter(mBlur);
+        if (active != null) {
+            canvas.drawPath(active.path, paintFor(active));
+        }
+    }
 
-            mCanvas.drawPath(fp.path, mPaint);
+    private Paint paintFor(FingerPath fp) {
+        mPaint.setColor(fp.color);
+        mPaint.setStrokeWidth(fp.strokeWidth);
+        mPaint.setMaskFilter(null);
 
-        }
+        if (fp.emboss)
+            mPaint.setMaskFilter(mEmboss);
+        else if (fp.blur)
+            mPaint.setMaskFilter(mBlur);
 
-        canvas.drawBitmap(mask, 0, 0, mBitmapPaint);
-        canvas.restore();
+        return mPaint;
     }
 
     private void touchStart(float x, float y) {
         mPath = new Path();
-        FingerPath fp = new FingerPath(currentColor, emboss, blur, BRUSH_SIZE, mPath);
-        paths.add(fp);
+        active = new FingerPath(currentColor, emboss, blur, BRUSH_SIZE, mPath);
 
         mPath.reset();
         mPath.moveTo(x, y);
-        mX = x;
-        mY = y;
+        mX = mEndX = x;
+        mY = mEndY = y;
+
+        history.discard();
+        bounds.set(x, y, x, y);
+        invalidateStroke(bounds);
     }
 
     private void touchMove(float x, float y) {
+        if (active == null) return;
+
         float dx = Math.abs(x - mX);
         float dy = Math.abs(y - mY);
 
         if (dx >= TOUCH_TOLERANCE || dy >= TOUCH_TOLERANCE) {
-            mPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+            float endX = (x + mX) / 2, endY = (y + mY) / 2;
+            mPath.quadTo(mX, mY, endX, endY);
+
+            // the new curve lies inside the triangle of its end points and its control point
+            bounds.set(mEndX, mEndY, mEndX, mEndY);
+            bounds.union(mX, mY);
+            bounds.union(endX, endY);
+            invalidateStroke(bounds);
+
             mX = x;
             mY = y;
+            mEndX = endX;
+            mEndY = endY;
         }
     }
 
+    /**
+     * Finishes the stroke, saves the tiles it touched for undo and rasterises it into the mask, once
+     */
     private void touchUp() {
+        if (active == null) return;
+
         mPath.lineTo(mX, mY);
+        bounds.set(mEndX, mEndY, mEndX, mEndY);
+        bounds.union(mX, mY);
+        invalidateStroke(bounds);
+
+        history.record();
+        mCanvas.drawPath(mPath, paintFor(active));
+        active = null;
+    }
+
+    /**
+     * Invalidates the bounds of a piece of stroke, grown by the brush radius and the blur or emboss halo,
+     * and marks the tiles under it for the undo history
+     */
+    private void invalidateStroke(RectF stroke) {
+        int margin = BRUSH_SIZE / 2 + STROKE_HALO;
+        dirty.set((int) Math.floor(stroke.left) - margin, (int) Math.floor(stroke.top) - margin,
+                (int) Math.ceil(stroke.right) + margin, (int) Math.ceil(stroke.bottom) + margin);
+        history.touch(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        invalidate(dirty);
+    }
+
+    /**
+     * Lets the history read and write tiles of a mutable bitmap
+     */
+    private static class BitmapSurface implements StrokeHistory.Surface {
+        private final Bitmap bitmap;
+
+        BitmapSurface(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public int width() {
+            return bitmap.getWidth();
+        }
+
+        @Override
+        public int height() {
+            return bitmap.getHeight();
+        }
+
+        @Override
+        public void read(int x, int y, int width, int height, int[] pixels) {
+            bitmap.getPixels(pixels, 0, width, x, y, width, height);
+        }
+
+        @Override
+        public void write(int x, int y, int width, int height, int[] pixels) {
+            bitmap.setPixels(pixels, 0, width, x, y, width, height);
+        }
     }
 
     @Override
@@ -163,15 +285,12 @@ public class PaintView extends View {
         switch(event.getAction()) {
             case MotionEvent.ACTION_DOWN :
                 touchStart(x, y);
-                invalidate();
                 break;
             case MotionEvent.ACTION_MOVE :
                 touchMove(x, y);
-                invalidate();
                 break;
             case MotionEvent.ACTION_UP :
                 touchUp();
-                invalidate();
                 break;
         }
 
@@ -0,0 +1,212 @@
+package br.unb.cic.opencv.paint;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Undo/redo history of the mask, kept as snapshots of the 64x64 tiles each stroke touched.
+ * <p>
+ * A stroke marks the tiles it passes over with {@link #touch}, and {@link #record()} saves those tiles right before
+ * the stroke is rasterised. Undo and redo swap the saved tiles with the ones on the surface, so they cost as many
+ * tile copies as the stroke touched, and the entry then holds the state to go back to. When the saved tiles go over
+ * the memory cap the oldest entries are dropped.
+ */
+public class StrokeHistory {
+
+    public static final int TILE_SIZE = 64;
+
+    /**
+     * Pixels the history snapshots, ARGB ints in row-major order
+     */
+    public interface Surface {
+        int width();
+
+        int height();
+
+        void read(int x, int y, int width, int height, int[] pixels);
+
+        void write(int x, int y, int width, int height, int[] pixels);
+    }
+
+    private final Surface surface;
+    private final long maxBytes;
+    private final int tilesX, tilesY;
+
+    private final Deque<Entry> undo = new ArrayDeque<>();
+    private final Deque<Entry> redo = new ArrayDeque<>();
+    private final BitSet touched = new BitSet();
+    private long bytes;
+
+    public StrokeHistory(Surface surface, long maxBytes) {
+        this.surface = surface;
+        this.maxBytes = maxBytes;
+        this.tilesX = (surface.width() + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (surface.height() + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Marks the tiles under the rectangle, clipped to the surface, as touched by the stroke being drawn
+     */
+    public void touch(float left, float top, float right, float bottom) {
+        int fromX = Math.max(0, (int) Math.floor(left) / TILE_SIZE);
+        int fromY = Math.max(0, (int) Math.floor(top) / TILE_SIZE);
+        int toX = Math.min(tilesX - 1, (int) Math.ceil(right) / TILE_SIZE);
+        int toY = Math.min(tilesY - 1, (int) Math.ceil(bottom) / TILE_SIZE);
+
+        for (int ty = fromY; ty <= toY; ty++) {
+            if (toX >= fromX) {
+                touched.set(ty * tilesX + fromX, ty * tilesX + toX + 1);
+            }
+        }
+    }
+
+    public void touchAll() {
+        touched.set(0, tilesX * tilesY);
+    }
+
+    /**
+     * Saves the touched tiles as a new entry and clears the redo history. Call it before drawing the stroke
+     */
+    public void record() {
+        if (touched.isEmpty()) {
+            return;
+        }
+
+        int[] tiles = new int[touched.cardinality()];
+        int[][] pixels = new int[tiles.length][];
+        for (int i = 0, tile = touched.nextSetBit(0); tile >= 0; i++, tile = touched.nextSetBit(tile + 1)) {
+            tiles[i] = tile;
+            pixels[i] = new int[tileWidth(tile) * tileHeight(tile)];
+            read(tile, pixels[i]);
+        }
+        touched.clear();
+
+        for (Entry entry : redo) {
+            bytes -= entry.bytes;
+        }
+        redo.clear();
+
+        Entry entry = new Entry(tiles, pixels);
+        undo.push(entry);
+        bytes += entry.bytes;
+        evict();
+    }
+
+    /**
+     * Forgets the tiles touched since the last record
+     */
+    public void discard() {
+        touched.clear();
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    public boolean undo() {
+        if (undo.isEmpty()) {
+            return false;
+        }
+        Entry entry = undo.pop();
+        swap(entry);
+        redo.push(entry);
+        return true;
+    }
+
+    public boolean redo() {
+        if (redo.isEmpty()) {
+            return false;
+        }
+        Entry entry = redo.pop();
+        swap(entry);
+        undo.push(entry);
+        return true;
+    }
+
+    public int size() {
+        return undo.size() + redo.size();
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public void reset() {
+        undo.clear();
+        redo.clear();
+        touched.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Drops the oldest undo entries until the history fits the cap, the latest stroke is always kept
+     */
+    private void evict() {
+        while (bytes > maxBytes && undo.size() > 1) {
+            bytes -= undo.removeLast().bytes;
+        }
+    }
+
+    /**
+     * Puts the saved tiles on the surface and keeps the ones they replaced
+     */
+    private void swap(Entry entry) {
+        int[] current = new int[TILE_SIZE * TILE_SIZE];
+        for (int i = 0; i < entry.tiles.length; i++) {
+            int tile = entry.tiles[i];
+            int[] saved = entry.pixels[i];
+            if (current.length != saved.length) {
+                current = new int[saved.length];
+            }
+
+            read(tile, current);
+            write(tile, saved);
+
+            entry.pixels[i] = current;
+            current = saved;
+        }
+    }
+
+    private void read(int tile, int[] pixels) {
+        surface.read(tileX(tile), tileY(tile), tileWidth(tile), tileHeight(tile), pixels);
+    }
+
+    private void write(int tile, int[] pixels) {
+        surface.write(tileX(tile), tileY(tile), tileWidth(tile), tileHeight(tile), pixels);
+    }
+
+    private int tileX(int tile) {
+        return tile % tilesX * TILE_SIZE;
+    }
+
+    private int tileY(int tile) {
+        return tile / tilesX * TILE_SIZE;
+    }
+
+    private int tileWidth(int tile) {
+        return Math.min(TILE_SIZE, surface.width() - tileX(tile));
+    }
+
+    private int tileHeight(int tile) {
+        return Math.min(TILE_SIZE, surface.height() - tileY(tile));
+    }
+
+    private static class Entry {
+        final int[] tiles;
+        final int[][] pixels;
+        final long bytes;
+
+        Entry(int[] tiles, int[][] pixels) {
+            this.tiles = tiles;
+            this.pixels = pixels;
+            long size = 0;
+            for (int[] tile : pixels) size += tile.length * 4L;
+            this.bytes = size;
+        }
+    }
+}
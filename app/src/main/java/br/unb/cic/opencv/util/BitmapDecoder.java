@@ -0,0 +1,95 @@
+package br.unb.cic.opencv.util;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes picked images straight at the resolution the pipeline works on. The bounds are read first and the
+ * image is decoded with the largest power of two inSampleSize that keeps it at least as big as the target, so a
+ * 48 MP photo never exists in memory at full size unless {@link #decodeFull} is asked for it.
+ */
+public class BitmapDecoder {
+
+    private BitmapDecoder() {
+        throw new UnsupportedOperationException("No " + BitmapDecoder.class.getSimpleName() + " instances for you!");
+    }
+
+    /**
+     * Decodes the image so its largest side is between targetSize and twice that, or its full size if smaller
+     */
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int targetSize) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decode(resolver, uri, bounds);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, targetSize);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return decode(resolver, uri, options);
+    }
+
+    /**
+     * Decodes the image at full resolution straight into a BGR Mat, so there is never a Bitmap of the same size
+     * next to it. Only the explicit export calls it, interactive previews stay on {@link #decodeSampled}
+     */
+    public static Mat decodeFull(ContentResolver resolver, Uri uri) throws IOException {
+        MatOfByte encoded = new MatOfByte(read(resolver, uri));
+        Mat mat = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+        encoded.release();
+        if (mat.empty()) {
+            mat.release();
+            throw new IOException("Can't decode " + uri);
+        }
+        return mat;
+    }
+
+    /**
+     * Largest power of two that divides width and height without taking the largest side below targetSize
+     */
+    static int sampleSize(int width, int height, int targetSize) {
+        int largest = Math.max(width, height);
+        int sampleSize = 1;
+        while (largest / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static byte[] read(ContentResolver resolver, Uri uri) throws IOException {
+        try (InputStream stream = resolver.openInputStream(uri)) {
+            if (stream == null) {
+                throw new FileNotFoundException("Can't open " + uri);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(32, stream.available()));
+            byte[] buffer = new byte[64 * 1024];
+            for (int read; (read = stream.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static Bitmap decode(ContentResolver resolver, Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream stream = resolver.openInputStream(uri)) {
+            if (stream == null) {
+                throw new FileNotFoundException("Can't open " + uri);
+            }
+            Bitmap bitmap = BitmapFactory.decodeStream(stream, null, options);
+            if (bitmap == null && !options.inJustDecodeBounds) {
+                throw new IOException("Can't decode " + uri);
+            }
+            return bitmap;
+        }
+    }
+}
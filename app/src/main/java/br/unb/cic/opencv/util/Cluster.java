@@ -1,56 +1,280 @@
 package br.unb.cic.opencv.util;
 
-import android.util.SparseIntArray;
-
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Cluster {
 
+    private Cluster() {
+        throw new UnsupportedOperationException("No " + Cluster.class.getSimpleName() + " instances for you!");
+    }
+
+    /**
+     * Rows of the image that are copied to the Java heap at a time when assigning pixels to their nearest center
+     */
+    private static final int BAND_ROWS = 64;
+
+    /**
+     * Splits the image in k color clusters, the i-th Mat has the pixels of cluster i painted with its center
+     */
     public static List<Mat> cluster(Mat cutout, int k) {
-        Mat samples = cutout.reshape(1, cutout.cols() * cutout.rows());
+        return cluster(cutout, k, Options.EXACT);
+    }
+
+    public static List<Mat> cluster(Mat cutout, int k, Options options) {
+        Result result = segment(cutout, k, options);
+        List<Mat> clusters = result.planes(cutout);
+        result.release();
+        return clusters;
+    }
+
+    /**
+     * Runs kmeans over the pixels of the image, returning the label map, the centers and the size of each cluster
+     */
+    public static Result segment(Mat cutout, int k) {
+        return segment(cutout, k, Options.EXACT);
+    }
+
+    /**
+     * Like {@link #segment(Mat, int)}, but in subsampled mode the centers are fitted on a regular grid of about
+     * sampleSize pixels and every pixel of the image is then labelled with its nearest center
+     */
+    public static Result segment(Mat cutout, int k, Options options) {
+        if (options.isExact() || options.sampleSize >= cutout.total()) {
+            return exact(cutout, k, options.attempts);
+        }
+
+        double scale = Math.sqrt(options.sampleSize / (double) cutout.total());
+        Size grid = new Size(Math.max(k, Math.round(cutout.cols() * scale)), Math.max(1, Math.round(cutout.rows() * scale)));
+        Mat sample = new Mat();
+        Imgproc.resize(cutout, sample, grid, 0, 0, Imgproc.INTER_NEAREST);
+
+        Mat centers = fitCenters(sample, k, options.attempts, null);
+        sample.release();
+
+        int channels = cutout.channels();
+        float[] palette = new float[k * channels];
+        centers.get(0, 0, palette);
+        for (int i = 0; i < palette.length; i++) palette[i] *= 255;
+
+        Mat labels = new Mat(cutout.rows(), cutout.cols(), CvType.CV_32S);
+        byte[] pixels = new byte[Math.min(cutout.rows(), BAND_ROWS) * cutout.cols() * channels];
+        int[] bandLabels = new int[Math.min(cutout.rows(), BAND_ROWS) * cutout.cols()];
+        // get and put stop at the end of the Mat, so the last band can reuse the full sized buffers
+        for (int row = 0; row < cutout.rows(); row += BAND_ROWS) {
+            int rows = Math.min(BAND_ROWS, cutout.rows() - row);
+            int count = rows * cutout.cols();
+            cutout.get(row, 0, pixels);
+            nearest(pixels, count, channels, palette, bandLabels);
+            labels.put(row, 0, bandLabels);
+        }
+
+        centers.convertTo(centers, CvType.CV_8UC1, 255.0);
+        return new Result(labels, centers);
+    }
+
+    /**
+     * Labels each of the first count pixels with the index of the nearest center (squared euclidean distance)
+     */
+    static void nearest(byte[] pixels, int count, int channels, float[] centers, int[] labels) {
+        int k = centers.length / channels;
+        for (int p = 0, offset = 0; p < count; p++, offset += channels) {
+            int best = 0;
+            float bestDistance = Float.MAX_VALUE;
+            for (int c = 0; c < k; c++) {
+                float distance = 0;
+                for (int ch = 0, at = c * channels; ch < channels; ch++, at++) {
+                    float d = (pixels[offset + ch] & 0xFF) - centers[at];
+                    distance += d * d;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = c;
+                }
+            }
+            labels[p] = best;
+        }
+    }
+
+    /**
+     * Largest distance, in 8 bit color units, between a center of one mode and the closest unmatched center of
+     * the other. Centers are matched greedily, kmeans may return the same clusters in any order
+     */
+    public static double drift(Result exact, Result approximate) {
+        return drift(centers(exact), centers(approximate), exact.centers().cols());
+    }
+
+    static double drift(float[] a, float[] b, int channels) {
+        int k = a.length / channels;
+        boolean[] matched = new boolean[k];
+        double drift = 0;
+
+        for (int i = 0; i < k; i++) {
+            int best = -1;
+            double bestDistance = Double.MAX_VALUE;
+            for (int j = 0; j < k; j++) {
+                if (matched[j]) continue;
+                double distance = 0;
+                for (int ch = 0; ch < channels; ch++) {
+                    double d = a[i * channels + ch] - b[j * channels + ch];
+                    distance += d * d;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = j;
+                }
+            }
+            matched[best] = true;
+            drift = Math.max(drift, Math.sqrt(bestDistance));
+        }
+
+        return drift;
+    }
+
+    private static float[] centers(Result result) {
+        byte[] bytes = new byte[(int) result.centers().total()];
+        result.centers().get(0, 0, bytes);
+        float[] centers = new float[bytes.length];
+        for (int i = 0; i < bytes.length; i++) centers[i] = bytes[i] & 0xFF;
+        return centers;
+    }
+
+    private static Result exact(Mat cutout, int k, int attempts) {
+        Mat labels = new Mat();
+        Mat centers = fitCenters(cutout, k, attempts, labels);
+
+        centers.convertTo(centers, CvType.CV_8UC1, 255.0);
+        Mat labelMap = labels.reshape(1, cutout.rows());
+        labels.release();
+        return new Result(labelMap, centers);
+    }
+
+    /**
+     * Runs kmeans over the pixels of the image scaled to [0, 1], returning the CV_32F centers
+     */
+    private static Mat fitCenters(Mat image, int k, int attempts, Mat labels) {
+        Mat samples = image.reshape(1, image.cols() * image.rows());
         Mat samples32f = new Mat();
         samples.convertTo(samples32f, CvType.CV_32F, 1.0 / 255.0);
 
-        Mat labels = new Mat();
+        Mat bestLabels = labels != null ? labels : new Mat();
         TermCriteria criteria = new TermCriteria(TermCriteria.COUNT, 100, 1);
         Mat centers = new Mat();
-        Core.kmeans(samples32f, k, labels, criteria, 10, Core.KMEANS_PP_CENTERS, centers);
-        return showClusters(cutout, labels, centers);
+        Core.kmeans(samples32f, k, bestLabels, criteria, attempts, Core.KMEANS_PP_CENTERS, centers);
+
+        samples32f.release();
+        if (labels == null) {
+            bestLabels.release();
+        }
+        return centers;
     }
 
-    private static List<Mat> showClusters (Mat cutout, Mat labels, Mat centers) {
-        centers.convertTo(centers, CvType.CV_8UC1, 255.0);
-        centers.reshape(4);
-
-        List<Mat> clusters = new ArrayList<>();
-        for(int i = 0; i < centers.rows(); i++) {
-            clusters.add(Mat.zeros(cutout.size(), cutout.type()));
-        }
-
-        SparseIntArray counts = new SparseIntArray();
-        for(int i = 0; i < centers.rows(); i++) counts.put(i, 0);
-
-        int rows = 0;
-        for(int y = 0; y < cutout.rows(); y++) {
-            for(int x = 0; x < cutout.cols(); x++) {
-                int label = (int)labels.get(rows, 0)[0];
-                int r = (int)centers.get(label, 2)[0];
-                int g = (int)centers.get(label, 1)[0];
-                int b = (int)centers.get(label, 0)[0];
-                counts.put(label, counts.get(label) + 1);
-                clusters.get(label).put(y, x, b, g, r, 255D);
-                rows++;
+    /**
+     * How Cluster fits its centers: on every pixel, or on a subsample of them
+     */
+    public static class Options {
+        public static final int DEFAULT_ATTEMPTS = 10;
+        public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+        public static final Options EXACT = new Options(0, DEFAULT_ATTEMPTS);
+
+        final int sampleSize;
+        final int attempts;
+
+        private Options(int sampleSize, int attempts) {
+            this.sampleSize = sampleSize;
+            this.attempts = attempts;
+        }
+
+        public static Options exact(int attempts) {
+            return new Options(0, attempts);
+        }
+
+        public static Options subsampled(int sampleSize, int attempts) {
+            if (sampleSize <= 0 || attempts <= 0) {
+                throw new IllegalArgumentException("sampleSize and attempts must be positive");
             }
+            return new Options(sampleSize, attempts);
+        }
+
+        public boolean isExact() {
+            return sampleSize <= 0;
+        }
+    }
+
+    public static class Result {
+        private final Mat labels;
+        private final Mat centers;
+        private final int[] counts;
+
+        /**
+         * @param labels  CV_32S label map with the size of the image
+         * @param centers CV_8U matrix with one center per row and one column per channel
+         */
+        Result(Mat labels, Mat centers) {
+            this.labels = labels;
+            this.centers = centers;
+            this.counts = new int[centers.rows()];
+        }
+
+        public Mat labels() {
+            return labels;
+        }
+
+        public Mat centers() {
+            return centers;
+        }
+
+        public int k() {
+            return centers.rows();
+        }
+
+        /**
+         * Number of pixels in each cluster, filled in by {@link #planes(Mat)}
+         */
+        public int[] counts() {
+            return counts;
+        }
+
+        /**
+         * Builds one image per cluster, with the type of the cutout: pixels of the cluster get the center color
+         * (and an opaque alpha), every other pixel is zero. Each plane is a native compare and setTo over the label
+         * map, so nothing is copied to the Java heap no matter the size of the image
+         */
+        public List<Mat> planes(Mat cutout) {
+            byte[] palette = new byte[(int) centers.total()];
+            centers.get(0, 0, palette);
+            int channels = centers.cols();
+
+            List<Mat> clusters = new ArrayList<>(k());
+            Mat mask = new Mat();
+            for (int label = 0; label < k(); label++) {
+                Core.compare(labels, new Scalar(label), mask, Core.CMP_EQ);
+                counts[label] = Core.countNonZero(mask);
+
+                Mat plane = Mat.zeros(cutout.size(), cutout.type());
+                plane.setTo(color(palette, label * channels), mask);
+                clusters.add(plane);
+            }
+            mask.release();
+            return clusters;
+        }
+
+        public void release() {
+            labels.release();
+            centers.release();
+        }
+
+        private static Scalar color(byte[] palette, int offset) {
+            return new Scalar(palette[offset] & 0xFF, palette[offset + 1] & 0xFF, palette[offset + 2] & 0xFF, 255);
         }
-        System.out.println(counts);
-        return clusters;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,191 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.video.KalmanFilter;
+import org.opencv.video.SparsePyrLKOpticalFlow;
+
+/**
+ * Follows the four corners of a detected document from frame to frame with pyramidal Lucas-Kanade flow and
+ * smooths each of them with a constant velocity Kalman filter, so the full quad detection only has to run
+ * when tracking is lost or every {@code redetectInterval} frames.
+ * <p>
+ * Not thread safe, every call is meant to come from the camera thread. Frames are gray and all of the same
+ * size as the one given to {@link #seed}.
+ */
+public class CornerTracker {
+
+    private static final Size WINDOW = new Size(21, 21);
+    private static final int PYRAMID_LEVELS = 3;
+
+    /**
+     * Tracking is lost when the quad area leaves this range around the seeded one
+     */
+    private static final double MIN_AREA_RATIO = 0.5, MAX_AREA_RATIO = 2;
+
+    private static final float PROCESS_NOISE = 1e-2f, MEASUREMENT_NOISE = 1f;
+
+    private final int redetectInterval;
+    private final SparsePyrLKOpticalFlow flow = SparsePyrLKOpticalFlow.create(WINDOW, PYRAMID_LEVELS);
+    private final KalmanFilter[] filters = new KalmanFilter[4];
+    private final Mat measurement = new Mat(2, 1, CvType.CV_32F);
+
+    private Mat previous = new Mat(), next = new Mat();
+    private final MatOfPoint2f previousPoints = new MatOfPoint2f(), nextPoints = new MatOfPoint2f();
+    private final MatOfByte status = new MatOfByte();
+    private final MatOfFloat error = new MatOfFloat();
+    private final Point[] corners = new Point[4];
+
+    private boolean tracking;
+    private int framesSinceSeed;
+    private double seedArea;
+
+    public CornerTracker(int redetectInterval) {
+        this.redetectInterval = redetectInterval;
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = constantVelocity();
+        }
+    }
+
+    /**
+     * Starts tracking corners found in the given frame. The frame may be older than the next one passed to
+     * {@link #track}, the flow catches up with the detection latency in that call
+     */
+    public void seed(Mat gray, Square square) {
+        gray.copyTo(previous);
+        previousPoints.fromArray(square.tl, square.tr, square.br, square.bl);
+
+        Point[] points = previousPoints.toArray();
+        for (int i = 0; i < filters.length; i++) {
+            Mat state = filters[i].get_statePost();
+            state.put(0, 0, points[i].x, points[i].y, 0, 0);
+            filters[i].set_statePost(state);
+            Mat covariance = Mat.eye(4, 4, CvType.CV_32F);
+            filters[i].set_errorCovPost(covariance);
+            covariance.release();
+            state.release();
+        }
+
+        seedArea = square.area();
+        framesSinceSeed = 0;
+        tracking = true;
+    }
+
+    /**
+     * Follows the corners into the given frame.
+     *
+     * @return the smoothed corners, or null when nothing is tracked or tracking was lost in this frame
+     */
+    public Square track(Mat gray) {
+        if (!tracking) {
+            return null;
+        }
+
+        gray.copyTo(next);
+        flow.calc(previous, next, previousPoints, nextPoints, status, error);
+
+        Mat swap = previous;
+        previous = next;
+        next = swap;
+
+        byte[] found = status.toArray();
+        Point[] measured = nextPoints.toArray();
+        if (found.length != 4 || found[0] == 0 || found[1] == 0 || found[2] == 0 || found[3] == 0) {
+            tracking = false;
+            return null;
+        }
+
+        for (int i = 0; i < filters.length; i++) {
+            filters[i].predict().release();
+            measurement.put(0, 0, measured[i].x, measured[i].y);
+            Mat state = filters[i].correct(measurement);
+            corners[i] = new Point(state.get(0, 0)[0], state.get(1, 0)[0]);
+            state.release();
+        }
+
+        Square square = new Square(corners[0], corners[1], corners[3], corners[2]);
+        double ratio = square.area() / seedArea;
+        if (ratio < MIN_AREA_RATIO || ratio > MAX_AREA_RATIO || !inside(square, gray.width(), gray.height())) {
+            tracking = false;
+            return null;
+        }
+
+        // the flow follows the raw measurements, the filter only smooths what is drawn
+        previousPoints.fromArray(measured);
+        framesSinceSeed++;
+        return square;
+    }
+
+    /**
+     * Whether a full detection should run: nothing is tracked, or the corners may have drifted since the seed
+     */
+    public boolean needsDetection() {
+        return !tracking || framesSinceSeed >= redetectInterval;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    public void reset() {
+        tracking = false;
+    }
+
+    public void release() {
+        tracking = false;
+        previous.release();
+        next.release();
+        previousPoints.release();
+        nextPoints.release();
+        status.release();
+        error.release();
+        measurement.release();
+    }
+
+    private static boolean inside(Square square, int width, int height) {
+        return inside(square.tl, width, height) && inside(square.tr, width, height)
+                && inside(square.bl, width, height) && inside(square.br, width, height);
+    }
+
+    private static boolean inside(Point point, int width, int height) {
+        return point.x >= 0 && point.y >= 0 && point.x < width && point.y < height;
+    }
+
+    /**
+     * State x, y, vx, vy measured through x, y; one frame is one time unit
+     */
+    private static KalmanFilter constantVelocity() {
+        KalmanFilter filter = new KalmanFilter(4, 2, 0, CvType.CV_32F);
+
+        Mat transition = Mat.eye(4, 4, CvType.CV_32F);
+        transition.put(0, 2, 1);
+        transition.put(1, 3, 1);
+        filter.set_transitionMatrix(transition);
+
+        Mat measurementMatrix = Mat.zeros(2, 4, CvType.CV_32F);
+        measurementMatrix.put(0, 0, 1);
+        measurementMatrix.put(1, 1, 1);
+        filter.set_measurementMatrix(measurementMatrix);
+
+        Mat processNoise = new Mat(4, 4, CvType.CV_32F);
+        Core.setIdentity(processNoise, new Scalar(PROCESS_NOISE));
+        filter.set_processNoiseCov(processNoise);
+
+        Mat measurementNoise = new Mat(2, 2, CvType.CV_32F);
+        Core.setIdentity(measurementNoise, new Scalar(MEASUREMENT_NOISE));
+        filter.set_measurementNoiseCov(measurementNoise);
+
+        transition.release();
+        measurementMatrix.release();
+        processNoise.release();
+        measurementNoise.release();
+        return filter;
+    }
+}
@@ -0,0 +1,57 @@
+package br.unb.cic.opencv.util;
+
+/**
+ * Union-find over the integers [0, size), with path compression and union by rank
+ */
+public class DisjointSet {
+
+    private final int[] parent;
+    private final byte[] rank;
+
+    public DisjointSet(int size) {
+        parent = new int[size];
+        rank = new byte[size];
+        for (int i = 0; i < size; i++) parent[i] = i;
+    }
+
+    public int size() {
+        return parent.length;
+    }
+
+    /**
+     * Returns the representative of the set that contains x
+     */
+    public int find(int x) {
+        int root = x;
+        while (parent[root] != root) root = parent[root];
+
+        while (parent[x] != root) {
+            int next = parent[x];
+            parent[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    /**
+     * Merges the sets that contain a and b. Returns false if they were already the same set
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a), rootB = find(b);
+        if (rootA == rootB) return false;
+
+        if (rank[rootA] < rank[rootB]) {
+            parent[rootA] = rootB;
+        } else if (rank[rootA] > rank[rootB]) {
+            parent[rootB] = rootA;
+        } else {
+            parent[rootB] = rootA;
+            rank[rootA]++;
+        }
+        return true;
+    }
+
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+}
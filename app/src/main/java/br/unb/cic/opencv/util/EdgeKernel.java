@@ -0,0 +1,68 @@
+package br.unb.cic.opencv.util;
+
+/**
+ * Plain Java version of the GPU edge preview: BT.601 luma, a 3x3 Gaussian and a Sobel magnitude computed as
+ * {@code 0.5 * |gx| + 0.5 * |gy|} with both gradients saturated first, like ImageProcessing.sobelFilter.
+ * Borders are replicated, as CLAMP_TO_EDGE does on the GPU, and the blurred luma is rounded to 8 bits because
+ * the shader keeps it in an RGBA texture between its two passes. Results match the shader up to a grey level
+ * and can be checked on the desktop, without a camera or a GL context.
+ */
+public class EdgeKernel {
+
+    public static final float LUMA_R = 0.299f, LUMA_G = 0.587f, LUMA_B = 0.114f;
+
+    private EdgeKernel() {
+        throw new UnsupportedOperationException("No " + EdgeKernel.class.getSimpleName() + " instances for you!");
+    }
+
+    /**
+     * @param argb packed pixels, row by row, as Bitmap.getPixels returns them
+     * @return edge strength of every pixel, 0 to 255
+     */
+    public static int[] edges(int[] argb, int width, int height) {
+        return sobel(gaussian3(luma(argb), width, height), width, height);
+    }
+
+    public static float[] luma(int[] argb) {
+        float[] luma = new float[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            luma[i] = LUMA_R * ((pixel >> 16) & 0xff) + LUMA_G * ((pixel >> 8) & 0xff) + LUMA_B * (pixel & 0xff);
+        }
+        return luma;
+    }
+
+    /**
+     * [1 2 1] x [1 2 1] / 16, rounded to 8 bits
+     */
+    public static int[] gaussian3(float[] src, int width, int height) {
+        int[] dst = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int up = Math.max(y - 1, 0) * width, row = y * width, down = Math.min(y + 1, height - 1) * width;
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(x - 1, 0), right = Math.min(x + 1, width - 1);
+                float sum = src[up + left] + 2 * src[up + x] + src[up + right]
+                        + 2 * src[row + left] + 4 * src[row + x] + 2 * src[row + right]
+                        + src[down + left] + 2 * src[down + x] + src[down + right];
+                dst[row + x] = Math.round(sum / 16);
+            }
+        }
+        return dst;
+    }
+
+    public static int[] sobel(int[] src, int width, int height) {
+        int[] dst = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int up = Math.max(y - 1, 0) * width, row = y * width, down = Math.min(y + 1, height - 1) * width;
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(x - 1, 0), right = Math.min(x + 1, width - 1);
+                int gx = src[up + right] + 2 * src[row + right] + src[down + right]
+                        - src[up + left] - 2 * src[row + left] - src[down + left];
+                int gy = src[down + left] + 2 * src[down + x] + src[down + right]
+                        - src[up + left] - 2 * src[up + x] - src[up + right];
+                dst[row + x] = Math.round(0.5f * Math.min(Math.abs(gx), 255) + 0.5f * Math.min(Math.abs(gy), 255));
+            }
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,114 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+import static org.opencv.imgproc.Imgproc.cvtColor;
+
+public class Enhancer {
+
+    public static final int DEFAULT_THRESHOLD = 165;
+
+    /**
+     * Bands smaller than this are not split any further, the JNI copy would dominate
+     */
+    private static final int MIN_BAND_ROWS = 64;
+
+    private Enhancer() {
+        throw new UnsupportedOperationException("No " + Enhancer.class.getSimpleName() + " instances for you!");
+    }
+
+    public static Mat enhance(Mat mat) {
+        return enhance(mat, DEFAULT_THRESHOLD, Workers.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Whitens every pixel whose R, G and B values are all above the threshold.
+     * The image is split in row bands, each band is copied to a byte[] once, processed row-major
+     * and written back once. With parallelism > 1 the image is cut in about 4 bands per worker, which run on
+     * the shared {@link Workers} pool of that many threads; the output is the same as the single-threaded path
+     * since bands never overlap
+     */
+    public static Mat enhance(Mat mat, int threshold, int parallelism) {
+        return enhance(mat, threshold, parallelism, Workers.NEVER_CANCELLED);
+    }
+
+    /**
+     * Same as {@link #enhance(Mat, int, int)}. Once cancelled the bands left are skipped and a
+     * CancellationException is thrown after the running ones are done, leaving the Mat half whitened
+     */
+    public static Mat enhance(Mat mat, int threshold, int parallelism, BooleanSupplier cancelled) {
+        cvtColor(mat, mat, Imgproc.COLOR_RGBA2RGB);
+
+        if (parallelism <= 1) {
+            whitenRows(mat, 0, mat.rows(), threshold);
+            return mat;
+        }
+
+        int bandRows = Math.max(MIN_BAND_ROWS, (mat.rows() + parallelism * 4 - 1) / (parallelism * 4));
+        Workers.invoke(new BandTask(mat, 0, mat.rows(), bandRows, threshold, cancelled), parallelism);
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Enhance cancelled");
+        }
+
+        return mat;
+    }
+
+    private static void whitenRows(Mat mat, int rowStart, int rowEnd, int threshold) {
+        Mat band = mat.submat(rowStart, rowEnd, 0, mat.cols());
+
+        byte[] data = new byte[(int) band.total() * band.channels()];
+        band.get(0, 0, data);
+        whiten(data, band.channels(), threshold);
+        band.put(0, 0, data);
+
+        band.release();
+    }
+
+    /**
+     * Sets the first three channels of each pixel to 255 when all of them are >= threshold
+     */
+    static void whiten(byte[] data, int channels, int threshold) {
+        for (int k = 0; k + 2 < data.length; k += channels) {
+            if ((data[k] & 0xFF) >= threshold && (data[k + 1] & 0xFF) >= threshold && (data[k + 2] & 0xFF) >= threshold) {
+                data[k] = (byte) 255;
+                data[k + 1] = (byte) 255;
+                data[k + 2] = (byte) 255;
+            }
+        }
+    }
+
+    private static class BandTask extends RecursiveAction {
+
+        private final Mat mat;
+        private final int rowStart, rowEnd, bandRows, threshold;
+        private final BooleanSupplier cancelled;
+
+        BandTask(Mat mat, int rowStart, int rowEnd, int bandRows, int threshold, BooleanSupplier cancelled) {
+            this.mat = mat;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.bandRows = bandRows;
+            this.threshold = threshold;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            if (rowEnd - rowStart <= bandRows) {
+                whitenRows(mat, rowStart, rowEnd, threshold);
+                return;
+            }
+            int middle = (rowStart + rowEnd) >>> 1;
+            invokeAll(new BandTask(mat, rowStart, middle, bandRows, threshold, cancelled),
+                    new BandTask(mat, middle, rowEnd, bandRows, threshold, cancelled));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package br.unb.cic.opencv.util;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Tracks frame time jitter and native heap growth of a camera loop and logs them periodically,
+ * so long runs (10 minutes or more) can be checked for leaks and stutter from logcat.
+ * Recording a frame does not allocate.
+ */
+public class FrameStats {
+
+    private final String tag;
+    private final long reportIntervalNs;
+
+    private long startNs, lastFrameNs, lastReportNs, frameStartNs;
+    private long startNativeHeap;
+
+    private int frames, intervals;
+    private long totalFrames;
+    private double intervalSum, intervalSquares, processingSum;
+    private long maxIntervalNs, maxProcessingNs;
+
+    public FrameStats(String tag, long reportIntervalMs) {
+        this.tag = tag;
+        this.reportIntervalNs = reportIntervalMs * 1000000L;
+    }
+
+    public void start() {
+        startNs = lastReportNs = SystemClock.elapsedRealtimeNanos();
+        lastFrameNs = 0;
+        startNativeHeap = Debug.getNativeHeapAllocatedSize();
+        totalFrames = 0;
+        clearWindow();
+    }
+
+    public void frameStarted() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (lastFrameNs != 0) {
+            long interval = now - lastFrameNs;
+            intervalSum += interval;
+            intervalSquares += (double) interval * interval;
+            maxIntervalNs = Math.max(maxIntervalNs, interval);
+            intervals++;
+        }
+        lastFrameNs = now;
+        frameStartNs = now;
+    }
+
+    public void frameFinished() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        long processing = now - frameStartNs;
+        processingSum += processing;
+        maxProcessingNs = Math.max(maxProcessingNs, processing);
+        frames++;
+        totalFrames++;
+
+        if (now - lastReportNs >= reportIntervalNs) {
+            report(now);
+            lastReportNs = now;
+            clearWindow();
+        }
+    }
+
+    private void report(long now) {
+        double meanInterval = intervalSum / Math.max(1, intervals);
+        double jitter = Math.sqrt(Math.max(0, intervalSquares / Math.max(1, intervals) - meanInterval * meanInterval));
+        long heapGrowth = Debug.getNativeHeapAllocatedSize() - startNativeHeap;
+
+        Log.i(tag, String.format("%ds, %d frames: interval %.1f ms (jitter %.1f ms, max %.1f ms), processing %.1f ms (max %.1f ms), native heap %+d KB",
+                (now - startNs) / 1000000000L, totalFrames, meanInterval / 1e6, jitter / 1e6, maxIntervalNs / 1e6,
+                processingSum / Math.max(1, frames) / 1e6, maxProcessingNs / 1e6, heapGrowth / 1024));
+    }
+
+    private void clearWindow() {
+        frames = intervals = 0;
+        intervalSum = intervalSquares = processingSum = 0;
+        maxIntervalNs = maxProcessingNs = 0;
+    }
+}
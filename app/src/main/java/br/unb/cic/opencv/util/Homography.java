@@ -0,0 +1,82 @@
+package br.unb.cic.opencv.util;
+
+/**
+ * 3x3 perspective transforms as row-major double[9], the layout of the CV_64F Mat getPerspectiveTransform returns.
+ * Enough of them to split a warpPerspective in tiles: each output tile only needs the source pixels inside the
+ * bounding box of its inverse-mapped corners, and a transform shifted to that box and to the tile.
+ */
+public class Homography {
+
+    private Homography() {
+        throw new UnsupportedOperationException("No " + Homography.class.getSimpleName() + " instances for you!");
+    }
+
+    public static double[] multiply(double[] a, double[] b) {
+        double[] c = new double[9];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                c[row * 3 + col] = a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] + a[row * 3 + 2] * b[6 + col];
+            }
+        }
+        return c;
+    }
+
+    public static double[] invert(double[] m) {
+        double a = m[4] * m[8] - m[5] * m[7];
+        double b = m[5] * m[6] - m[3] * m[8];
+        double c = m[3] * m[7] - m[4] * m[6];
+        double determinant = m[0] * a + m[1] * b + m[2] * c;
+        if (determinant == 0) {
+            throw new IllegalArgumentException("Transform is not invertible");
+        }
+
+        double[] inverse = {
+                a, m[2] * m[7] - m[1] * m[8], m[1] * m[5] - m[2] * m[4],
+                b, m[0] * m[8] - m[2] * m[6], m[2] * m[3] - m[0] * m[5],
+                c, m[1] * m[6] - m[0] * m[7], m[0] * m[4] - m[1] * m[3]
+        };
+        for (int i = 0; i < 9; i++) inverse[i] /= determinant;
+        return inverse;
+    }
+
+    public static double[] translation(double dx, double dy) {
+        return new double[]{1, 0, dx, 0, 1, dy, 0, 0, 1};
+    }
+
+    /**
+     * Maps (x, y), writing the result to out[0] and out[1]
+     */
+    public static void map(double[] m, double x, double y, double[] out) {
+        double w = m[6] * x + m[7] * y + m[8];
+        out[0] = (m[0] * x + m[1] * y + m[2]) / w;
+        out[1] = (m[3] * x + m[4] * y + m[5]) / w;
+    }
+
+    /**
+     * Bounding box, as {x, y, width, height}, of the source pixels that the output rectangle
+     * [x, x + width) x [y, y + height) reads through the inverse transform, grown by margin and clipped to the
+     * source. A homography maps the rectangle to a quad, so the box of its four corners holds all of it.
+     * Returns null when the box falls outside the source
+     */
+    public static int[] sourceBounds(double[] inverse, int x, int y, int width, int height, int margin, int cols, int rows) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        double[] point = new double[2];
+        for (int corner = 0; corner < 4; corner++) {
+            map(inverse, corner % 2 == 0 ? x : x + width, corner < 2 ? y : y + height, point);
+            minX = Math.min(minX, point[0]);
+            minY = Math.min(minY, point[1]);
+            maxX = Math.max(maxX, point[0]);
+            maxY = Math.max(maxY, point[1]);
+        }
+
+        int left = (int) Math.max(0, Math.floor(minX) - margin);
+        int top = (int) Math.max(0, Math.floor(minY) - margin);
+        int right = (int) Math.min(cols, Math.ceil(maxX) + margin + 1);
+        int bottom = (int) Math.min(rows, Math.ceil(maxY) + margin + 1);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return new int[]{left, top, right - left, bottom - top};
+    }
+}
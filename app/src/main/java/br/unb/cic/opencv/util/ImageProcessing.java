@@ -13,15 +13,13 @@ import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.photo.Photo;
 import org.opencv.utils.Converters;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 import static org.opencv.core.Core.BORDER_DEFAULT;
 import static org.opencv.core.Core.bitwise_not;
@@ -34,18 +32,34 @@ import static org.opencv.imgproc.Imgproc.Canny;
 import static org.opencv.imgproc.Imgproc.GaussianBlur;
 import static org.opencv.imgproc.Imgproc.HoughLinesP;
 import static org.opencv.imgproc.Imgproc.MORPH_ELLIPSE;
-import static org.opencv.imgproc.Imgproc.MORPH_RECT;
 import static org.opencv.imgproc.Imgproc.adaptiveThreshold;
 import static org.opencv.imgproc.Imgproc.boundingRect;
 import static org.opencv.imgproc.Imgproc.cvtColor;
 import static org.opencv.imgproc.Imgproc.dilate;
-import static org.opencv.imgproc.Imgproc.erode;
 import static org.opencv.imgproc.Imgproc.floodFill;
-import static org.opencv.imgproc.Imgproc.getStructuringElement;
 import static org.opencv.imgproc.Imgproc.threshold;
 
 public class ImageProcessing {
 
+    public static final float FINAL_SIZE = 1280f;
+    public static final float DETECTION_SIZE = 640f;
+
+    /**
+     * Side of the output tiles of the two pass warp, and how many source pixels around each tile's box the cubic
+     * interpolation may read
+     */
+    private static final int WARP_TILE = 512;
+    private static final int WARP_MARGIN = 3;
+
+    /**
+     * Quad detection parameters, tuned on images whose largest side is FINAL_SIZE. Smaller detection frames
+     * scale them down, so a dilation doesn't merge the document edges and short sides still get enough votes
+     */
+    private static final int DETECTION_BLUR = 9, DETECTION_DILATION = 10, HOUGH_VOTES = 50;
+    private static final int MIN_DETECTION_DILATION = 2, MIN_HOUGH_VOTES = 10;
+
+    private static final Scalar LINE_COLOR = new Scalar(255, 0, 0);
+
     private ImageProcessing() {
         throw new UnsupportedOperationException("No " + ImageProcessing.class.getSimpleName() + " instances for you!");
     }
@@ -61,10 +75,14 @@ public class ImageProcessing {
      */
     public static Mat gaussian3(Mat mat) {
         Mat dst = new Mat();
-        GaussianBlur(mat, dst, new Size(9, 9), 0, 0, BORDER_DEFAULT);
+        gaussian3(mat, dst);
         return dst;
     }
 
+    public static void gaussian3(Mat mat, Mat dst) {
+        GaussianBlur(mat, dst, new Size(9, 9), 0, 0, BORDER_DEFAULT);
+    }
+
     /**
      * Applies the Gaussian filter in an Mat with a generic mask size
      */
@@ -81,6 +99,10 @@ public class ImageProcessing {
         cvtColor(mat, mat, COLOR_BGR2GRAY);
     }
 
+    public static void convertToGray(Mat mat, Mat dst) {
+        cvtColor(mat, dst, COLOR_BGR2GRAY);
+    }
+
     /**
      * Converts a Mat to color
      */
@@ -95,7 +117,11 @@ public class ImageProcessing {
      */
     public static Mat sobelFilter(Mat mat) {
         Mat dst = new Mat();
+        sobelFilter(mat, dst);
+        return dst;
+    }
 
+    public static void sobelFilter(Mat mat, Mat dst) {
         int scale = 1, delta = 0;
         Mat grad_x = new Mat(), grad_y = new Mat();
         Imgproc.Sobel(mat, grad_x, CV_16S, 1, 0, 3, scale, delta, BORDER_DEFAULT);
@@ -109,7 +135,10 @@ public class ImageProcessing {
 
         threshold(dst, dst, 40, 255, Imgproc.THRESH_BINARY);
 
-        return dst;
+        grad_x.release();
+        grad_y.release();
+        abs_grad_x.release();
+        abs_grad_y.release();
     }
 
     /**
@@ -117,36 +146,46 @@ public class ImageProcessing {
      */
     public static Mat canny(Mat mat) {
         Mat dst = new Mat();
-        Canny(mat, dst, 100, 200, 5, true);
+        canny(mat, dst);
         return dst;
     }
 
+    public static void canny(Mat mat, Mat dst) {
+        Canny(mat, dst, 100, 200, 5, true);
+    }
+
     public static Mat resizeIfNecessary(Mat mat) {
-        final float FINAL_SIZE = 1280f;
+        Size size = resizedSize(mat, FINAL_SIZE);
+        if (size == null) {
+            return mat;
+        }
+
+        Mat aux = new Mat();
+        Imgproc.resize(mat, aux, size);
+        return aux;
+    }
 
+    /**
+     * Size resizeIfNecessary scales the Mat to, or null if it already fits in finalSize
+     */
+    public static Size resizedSize(Mat mat, float finalSize) {
         int width = mat.width();
         int height = mat.height();
-        Mat aux = new Mat();
 
-        if (width > FINAL_SIZE) {
-            float aspectRatio = width / FINAL_SIZE;
-            Imgproc.resize(mat, aux, new Size(FINAL_SIZE, height / aspectRatio));
-            return aux;
-        } else if (height > FINAL_SIZE) {
-            float aspectRatio = height / FINAL_SIZE;
-            Imgproc.resize(mat, aux, new Size(width / aspectRatio, FINAL_SIZE));
-            return aux;
+        if (width > finalSize) {
+            float aspectRatio = width / finalSize;
+            return new Size(finalSize, height / aspectRatio);
+        } else if (height > finalSize) {
+            float aspectRatio = height / finalSize;
+            return new Size(width / aspectRatio, finalSize);
         }
 
-        return mat;
+        return null;
     }
 
     private static void dilateErode(Mat binaryImg) {
-        Mat kernel10 = getStructuringElement(MORPH_RECT, new Size(10, 10));
-        Mat kernel20 = getStructuringElement(MORPH_RECT, new Size(20, 20));
-
-        dilate(binaryImg, binaryImg, kernel20);
-        erode(binaryImg, binaryImg, kernel10);
+        Morphology.dilate(binaryImg, 20, 20);
+        Morphology.erode(binaryImg, 10, 10);
     }
 
     private static void binarize(Mat src) {
@@ -161,65 +200,69 @@ public class ImageProcessing {
     }
 
     public static Mat bestApproach(Mat src, Mat original) {
-        int minImageDimention = Math.min(src.width(), src.height());
-        int maxImageDimention = Math.max(src.width(), src.height());
         Mat out = original.clone();
 
-        Mat canny = canny(src);
-
-        Mat kernel10 = getStructuringElement(MORPH_RECT, new Size(10, 10));
-        dilate(canny, canny, kernel10);
-        Mat lines = new Mat();
-        HoughLinesP(canny, lines, 2, 2 * Math.PI / 180, 50, minImageDimention / 2D, minImageDimention / 10D);
+        Square square = detectSquare(src);
+        if (square != null) {
+//            drawLine(out, square);
+            warpPerspective(out, square);
 
+        }
 
-        List<Line> imageLines = new ArrayList<>();
+        return out;
+    }
 
-        for (int i = lines.rows() - 1; i >= 0; i--) {
-            double[] vec = lines.get(i, 0);
-            double x1 = vec[0], y1 = vec[1], x2 = vec[2], y2 = vec[3];
-            Point start = new Point(x1, y1);
-            Point end = new Point(x2, y2);
-            Line line = new Line(start, end);
+    /**
+     * Finds the document corners in a blurred gray image, or returns null if there is no quad.
+     * Only the quad search is done here, so it can run on small preview frames as well as on photos
+     */
+    public static Square detectSquare(Mat src) {
+        int minImageDimention = Math.min(src.width(), src.height());
+        double scale = detectionScale(src);
 
-                imageLines.add(line);
-//            Imgproc.line(out, start, end, new Scalar(Math.random()*255, Math.random()*255, Math.random()*255), 1);
+        Mat canny = canny(src);
 
-        }
+        int dilation = Math.max(MIN_DETECTION_DILATION, (int) Math.round(DETECTION_DILATION * scale));
+        Morphology.dilate(canny, dilation, dilation);
+        Mat lines = new Mat();
+        int votes = Math.max(MIN_HOUGH_VOTES, (int) Math.round(HOUGH_VOTES * scale));
+        HoughLinesP(canny, lines, 2, 2 * Math.PI / 180, votes, minImageDimention / 2D, minImageDimention / 10D);
 
+        Segments segments = LineClustering.merge(Segments.fromHough(lines));
+        canny.release();
+        lines.release();
 
-//        for (Line line : imageLines) {
-//            Imgproc.line(out, line.start, line.end, new Scalar(Math.random()*255, Math.random()*255, Math.random()*255), 1);
-//        }
+        Quads quads = computeLines(segments, src);
+        int best = quads.largest();
+        return best >= 0 ? quads.square(best) : null;
+    }
 
-        List<List<Point>> corners = computeLines(imageLines, src);
-        List<Square> squares = new ArrayList<>();
+    /**
+     * Blurs a gray image before {@link #detectSquare}, with the 9x9 gaussian of full size images scaled to its size
+     */
+    public static void detectionBlur(Mat gray, Mat dst) {
+        int size = Math.max(3, (int) Math.round(DETECTION_BLUR * detectionScale(gray)) | 1);
+        GaussianBlur(gray, dst, new Size(size, size), 0, 0, BORDER_DEFAULT);
+    }
 
-        for (int i = 0; i < corners.size(); i++) {
-            Point center = new Point(0, 0);
-            if (corners.get(i).size() < 4) continue;
-            for (int j = 0; j < corners.get(i).size(); j++) {
-                center.x += corners.get(i).get(j).x;
-                center.y += corners.get(i).get(j).y;
-            }
-            center.x *= (1. / corners.get(i).size());
-            center.y *= (1. / corners.get(i).size());
-            squares.add(sortCorners(corners.get(i), center));
-        }
+    private static double detectionScale(Mat src) {
+        return Math.max(src.width(), src.height()) / (double) FINAL_SIZE;
+    }
 
-        squares.sort(Comparator.comparingDouble(Square::area).reversed());
-        Optional<Square> first = squares.stream().findFirst();
-        if (first.isPresent()) {
-            Square square = first.get();
-//            drawLine(out, square);
-            warpPerspective(out, square);
+    private static void warpPerspective(Mat inputMat, Square square) {
+        Size size = new Size();
+        Mat perspectiveTransform = perspectiveTransform(inputMat, square, size);
 
-        }
+        Imgproc.warpPerspective(inputMat, inputMat, perspectiveTransform, size, Imgproc.INTER_CUBIC);
 
-        return out;
+        perspectiveTransform.release();
     }
 
-    private static void warpPerspective(Mat inputMat, Square square) {
+    /**
+     * Transform that maps the square to an upright rectangle with the size of its bounding box, rotated when the
+     * image is taller than wide. The rectangle size is written to resultSize
+     */
+    private static Mat perspectiveTransform(Mat inputMat, Square square, Size resultSize) {
 
         List<Point> source = new ArrayList<>();
         source.add(square.br);
@@ -254,33 +297,100 @@ public class ImageProcessing {
 
         Mat endM = Converters.vector_Point2f_to_Mat(dest);
 
-        Mat perspectiveTransform = Imgproc.getPerspectiveTransform(startM, endM);
+        resultSize.width = resultWidth;
+        resultSize.height = resultHeight;
+        Mat transform = Imgproc.getPerspectiveTransform(startM, endM);
+        startM.release();
+        endM.release();
+        return transform;
+    }
+
+    /**
+     * Finds the quad on a copy of the original scaled down to proxySize and warps it from the full resolution
+     * original, so detection is cheap and the scan keeps every pixel of the photo.
+     * The warp runs in tiles of WARP_TILE pixels, each reading only the source box its corners map back to, so no
+     * second full size buffer is ever allocated. Returns a clone of the original when there is no quad
+     */
+    public static Mat bestApproachTwoPass(Mat original, float proxySize) {
+        return bestApproachTwoPass(original, proxySize, Workers.NEVER_CANCELLED);
+    }
+
+    /**
+     * Same as {@link #bestApproachTwoPass(Mat, float)}, stopping with a CancellationException between tiles once
+     * cancelled
+     */
+    public static Mat bestApproachTwoPass(Mat original, float proxySize, BooleanSupplier cancelled) {
+        Mat out = bestApproachTwoPass(original, original, proxySize, cancelled);
+        return out != null ? out : original.clone();
+    }
+
+    /**
+     * Finds the quad on proxy, any smaller copy of the original such as a subsampled decode, scaled down to
+     * proxySize, and warps the original in tiles. Returns null when there is no quad, so a caller holding a very
+     * large original doesn't have to pay for a copy of it
+     */
+    public static Mat bestApproachTwoPass(Mat original, Mat proxy, float proxySize, BooleanSupplier cancelled) {
+        Size proxySizeOrNull = resizedSize(proxy, proxySize);
+        Mat small = new Mat();
+        if (proxySizeOrNull != null) {
+            Imgproc.resize(proxy, small, proxySizeOrNull, 0, 0, Imgproc.INTER_AREA);
+        } else {
+            proxy.copyTo(small);
+        }
+        double scale = original.width() / (double) small.width();
 
-        Imgproc.warpPerspective(inputMat, inputMat, perspectiveTransform, new Size(resultWidth, resultHeight), Imgproc.INTER_CUBIC);
+        Mat gray = new Mat();
+        Imgproc.cvtColor(small, gray, proxy.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : COLOR_BGR2GRAY);
+        detectionBlur(gray, gray);
+        small.release();
 
+        Square square = detectSquare(gray);
+        gray.release();
+        if (square == null) {
+            return null;
+        }
+
+        return warpTiled(original, square.scale(scale), cancelled);
     }
 
-    private static Point computeIntersection(Line l1, Line l2) {
-        double x1 = l1.end.x, x2 = l1.start.x, y1 = l1.end.y, y2 = l1.start.y;
-        double x3 = l2.end.x, x4 = l2.start.x, y3 = l2.end.y, y4 = l2.start.y;
-        double d = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+    private static Mat warpTiled(Mat original, Square square, BooleanSupplier cancelled) {
+        Size size = new Size();
+        Mat transform = perspectiveTransform(original, square, size);
+        double[] forward = new double[9];
+        transform.get(0, 0, forward);
+        transform.release();
+        double[] inverse = Homography.invert(forward);
+
+        Mat out = Mat.zeros(size, original.type());
+        Mat tileTransform = new Mat(3, 3, CvType.CV_64F);
+        for (int y = 0; y < out.rows(); y += WARP_TILE) {
+            for (int x = 0; x < out.cols(); x += WARP_TILE) {
+                if (cancelled.getAsBoolean()) {
+                    tileTransform.release();
+                    out.release();
+                    throw new CancellationException("Warp cancelled");
+                }
+                int width = Math.min(WARP_TILE, out.cols() - x);
+                int height = Math.min(WARP_TILE, out.rows() - y);
+                int[] bounds = Homography.sourceBounds(inverse, x, y, width, height, WARP_MARGIN, original.cols(), original.rows());
+                if (bounds == null) {
+                    continue;
+                }
 
-        if (d < 0) {
-            Point pt = new Point();
-            pt.x = ((x1 * y2 - y1 * x2) * (x3 - x4) - (x1 - x2) * (x3 * y4 - y3 * x4)) / d;
-            pt.y = ((x1 * y2 - y1 * x2) * (y3 - y4) - (y1 - y2) * (x3 * y4 - y3 * x4)) / d;
+                // source box coordinates -> full source -> output -> tile coordinates
+                double[] shifted = Homography.multiply(Homography.translation(-x, -y),
+                        Homography.multiply(forward, Homography.translation(bounds[0], bounds[1])));
+                tileTransform.put(0, 0, shifted);
 
-            int threshold = 0;
-            if (pt.x < Math.min(x1, x2) - threshold || pt.x > Math.max(x1, x2) + threshold || pt.y < Math.min(y1, y2) - threshold || pt.y > Math.max(y1, y2) + threshold) {
-                return new Point(-1, -1);
-            }
-            if (pt.x < Math.min(x3, x4) - threshold || pt.x > Math.max(x3, x4) + threshold || pt.y < Math.min(y3, y4) - threshold || pt.y > Math.max(y3, y4) + threshold) {
-                return new Point(-1, -1);
+                Mat source = original.submat(new Rect(bounds[0], bounds[1], bounds[2], bounds[3]));
+                Mat tile = out.submat(new Rect(x, y, width, height));
+                Imgproc.warpPerspective(source, tile, tileTransform, tile.size(), Imgproc.INTER_CUBIC);
+                source.release();
+                tile.release();
             }
-            return pt;
-        } else
-            return new Point(-1, -1);
-
+        }
+        tileTransform.release();
+        return out;
     }
 
     /**
@@ -290,108 +400,103 @@ public class ImageProcessing {
      * Se apenas uma linha for definida em um grupo, adicione a outra linha ao grupo.
      * Se ambas as linhas estiverem definidas, adicione todas as linhas de um grupo ao outro grupo.
      * Se ambas as linhas estiverem no mesmo grupo, não faça nada
+     *
+     * Os grupos ficam em um {@link DisjointSet}, então juntar dois grupos não copia pontos:
+     * cada intersecção guarda apenas a linha de origem e o grupo é resolvido no final.
+     * As intersecções vêm do {@link SegmentIntersector}, que só testa pares cujas caixas se sobrepõem.
      */
-    private static List<List<Point>> computeLines(List<Line> lines, Mat img2) {
-        int[] poly = new int[lines.size()];
-        for (int i = 0; i < lines.size(); i++) poly[i] = -1;
-
-        int curPoly = 0;
-        List<List<Point>> corners = new ArrayList<>();
-
-        for (int i = 0; i < lines.size(); i++) {
-            for (int j = i + 1; j < lines.size(); j++) {
-
-                Point pt = computeIntersection(lines.get(i), lines.get(j));
-                if (pt.x >= 0 && pt.y >= 0 && pt.x < img2.size().width && pt.y < img2.size().height) {
-
-                    if (poly[i] == -1 && poly[j] == -1) {
-                        List<Point> v = new ArrayList<>();
-
-                        v.add(pt);
-                        corners.add(v);
-                        poly[i] = curPoly;
-                        poly[j] = curPoly;
-                        curPoly++;
-                        continue;
-                    }
-                    if (poly[i] == -1 && poly[j] >= 0) {
-                        corners.get(poly[j]).add(pt);
-                        poly[i] = poly[j];
-                        continue;
-                    }
-                    if (poly[i] >= 0 && poly[j] == -1) {
-                        corners.get(poly[i]).add(pt);
-                        poly[j] = poly[i];
-                        continue;
-                    }
-                    if (poly[i] >= 0 && poly[j] >= 0) {
-                        if (poly[i] == poly[j]) {
-                            corners.get(poly[i]).add(pt);
-                            continue;
-                        }
-
-                        for (int k = 0; k < corners.get(poly[j]).size(); k++) {
-                            corners.get(poly[i]).add(corners.get(poly[j]).get(k));
-                        }
-
-                        corners.get(poly[j]).clear();
-                        poly[j] = poly[i];
-                    }
-                }
-            }
+    private static Quads computeLines(Segments segments, Mat img2) {
+        int n = segments.size();
+        SegmentIntersector intersector = new SegmentIntersector();
+        int count = segments.intersections(intersector, img2.size().width, img2.size().height);
+
+        DisjointSet groups = new DisjointSet(n);
+        for (int k = 0; k < count; k++) {
+            groups.union(intersector.first(k), intersector.second(k));
         }
 
-        return corners;
-    }
-
-    private static Square sortCorners(List<Point> corners, Point center) {
-        List<Point> top = new ArrayList<>(), bot = new ArrayList<>();
-        for (int i = 0; i < corners.size(); i++) {
-            if (corners.get(i).y < center.y)
-                top.add(corners.get(i));
-            else
-                bot.add(corners.get(i));
+        int[] groupIndex = new int[n];
+        Arrays.fill(groupIndex, -1);
+        int[] groupOf = new int[count];
+        int groupCount = 0;
+        for (int k = 0; k < count; k++) {
+            int root = groups.find(intersector.first(k));
+            if (groupIndex[root] == -1) groupIndex[root] = groupCount++;
+            groupOf[k] = groupIndex[root];
         }
 
-        Collections.sort(top);
-        Collections.sort(bot);
+        int[] sizes = new int[groupCount];
+        double[] centerY = new double[groupCount];
+        for (int k = 0; k < count; k++) {
+            sizes[groupOf[k]]++;
+            centerY[groupOf[k]] += intersector.y(k);
+        }
+        for (int g = 0; g < groupCount; g++) centerY[g] *= (1. / sizes[g]);
 
-        Point tl = top.get(0);
-        Point tr = top.get(top.size() - 1);
-        Point bl = bot.get(0);
-        Point br = bot.get(bot.size() - 1);
+        return sortCorners(intersector, groupOf, groupCount, sizes, centerY);
+    }
 
-        corners.clear();
+    /**
+     * Splits each group in the corners above and below its center and takes the extremes in x of each half.
+     * This picks the same points the old sort by {@link Point#compareTo} (descending x) did, without sorting
+     */
+    private static Quads sortCorners(SegmentIntersector intersector, int[] groupOf, int groupCount, int[] sizes, double[] centerY) {
+        int[] tl = new int[groupCount], tr = new int[groupCount], bl = new int[groupCount], br = new int[groupCount];
+        Arrays.fill(tl, -1);
+        Arrays.fill(tr, -1);
+        Arrays.fill(bl, -1);
+        Arrays.fill(br, -1);
+
+        for (int k = 0; k < groupOf.length; k++) {
+            int g = groupOf[k];
+            double x = intersector.x(k);
+            if (intersector.y(k) < centerY[g]) {
+                if (tl[g] == -1 || x > intersector.x(tl[g])) tl[g] = k;
+                if (tr[g] == -1 || x <= intersector.x(tr[g])) tr[g] = k;
+            } else {
+                if (bl[g] == -1 || x > intersector.x(bl[g])) bl[g] = k;
+                if (br[g] == -1 || x <= intersector.x(br[g])) br[g] = k;
+            }
+        }
 
-        corners.add(tl);
-        corners.add(tr);
-        corners.add(br);
-        corners.add(bl);
-        return new Square(tl, tr, bl, br);
+        Quads quads = new Quads();
+        for (int g = 0; g < groupCount; g++) {
+            if (sizes[g] < 4 || tl[g] == -1 || bl[g] == -1) continue;
+            quads.add(intersector.x(tl[g]), intersector.y(tl[g]), intersector.x(tr[g]), intersector.y(tr[g]),
+                    intersector.x(bl[g]), intersector.y(bl[g]), intersector.x(br[g]), intersector.y(br[g]));
+        }
+        return quads;
     }
 
-    private static void drawLine(Mat out, Square square) {
+    public static void drawLine(Mat out, Square square) {
         int thickness = 6;
-        Imgproc.line(out, square.tl, square.tr, new Scalar(255, 0, 0), thickness);
-        Imgproc.line(out, square.tl, square.bl, new Scalar(255, 0, 0), thickness);
-        Imgproc.line(out, square.bl, square.br, new Scalar(255, 0, 0), thickness);
-        Imgproc.line(out, square.br, square.tr, new Scalar(255, 0, 0), thickness);
+        Imgproc.line(out, square.tl, square.tr, LINE_COLOR, thickness);
+        Imgproc.line(out, square.tl, square.bl, LINE_COLOR, thickness);
+        Imgproc.line(out, square.bl, square.br, LINE_COLOR, thickness);
+        Imgproc.line(out, square.br, square.tr, LINE_COLOR, thickness);
     }
 
     public static Mat inpaint(Mat rgba) {
+        return Inpainting.inpaint(rgba);
+    }
 
-        Mat mask = getMaskInRange(rgba);
-
-        Imgproc.cvtColor(rgba, rgba, Imgproc.COLOR_RGBA2RGB);
+    public static Mat inpaint(Mat rgba, BooleanSupplier cancelled) {
+        return Inpainting.inpaint(rgba, cancelled);
+    }
 
-        Mat out = new Mat();
-        Photo.inpaint(rgba, mask, out, 20D, Photo.INPAINT_TELEA);
+    /**
+     * Inpaints a downscaled copy and only brings the filled region back to full resolution
+     */
+    public static Mat inpaintMultiScale(Mat rgba) {
+        return Inpainting.inpaintMultiScale(rgba);
+    }
 
-        return out;
+    public static Mat inpaintMultiScale(Mat rgba, BooleanSupplier cancelled) {
+        return Inpainting.inpaintMultiScale(rgba, Inpainting.DEFAULT_PROXY_SIZE, cancelled);
     }
 
     @NonNull
-    private static Mat getMaskInRange(Mat rgba) {
+    static Mat getMaskInRange(Mat rgba) {
         Mat mask = rgba.clone();
         convertToGray(mask);
         threshold(mask, mask, 206, 255, Imgproc.THRESH_BINARY);
@@ -400,14 +505,15 @@ public class ImageProcessing {
         closeHoles(mask);
         fillHoles(mask);
 
-        Mat kernelSmall = getStructuringElement(MORPH_ELLIPSE, new Size(5, 5));
-        dilate(mask, mask, kernelSmall);
+        dilate(mask, mask, Morphology.element(MORPH_ELLIPSE, 5, 5));
         return mask;
     }
 
     @NonNull
     private static Mat getMaskKmeans(Mat rgba) {
-        Mat mask = Cluster.cluster(rgba, 2).get(1);
+        List<Mat> clusters = Cluster.cluster(rgba, 2, Cluster.Options.subsampled(Cluster.Options.DEFAULT_SAMPLE_SIZE, 3));
+        clusters.get(0).release();
+        Mat mask = clusters.get(1);
         convertToGray(mask);
 //        closeHoles(mask);
 //        invertIfNecessary(mask);
@@ -426,9 +532,9 @@ public class ImageProcessing {
 
     private static void closeHoles(Mat mask) {
         int maxImageDimention = Math.max(mask.width(), mask.height());
-        Mat kernelBig = getStructuringElement(MORPH_RECT, new Size(maxImageDimention/50, maxImageDimention/50));
-        erode(mask, mask, kernelBig);
-        dilate(mask, mask, kernelBig);
+        int size = maxImageDimention / 50;
+        Morphology.erode(mask, size, size);
+        Morphology.dilate(mask, size, size);
 
     }
 
@@ -447,20 +553,14 @@ public class ImageProcessing {
     }
 
     public static Mat enhance(Mat mat) {
-        cvtColor(mat, mat, Imgproc.COLOR_RGBA2RGB);
-        int parameter = 165;
-        for (int i = 0; i < mat.cols(); i++) {
-            for (int j = 0; j < mat.rows(); j++) {
-                double[] values = mat.get(j, i);
-                if (values[0] >= parameter && values[1] >= parameter && values[2] >= parameter) {
-                    values[0] = 255;
-                    values[1] = 255;
-                    values[2] = 255;
-                }
-                mat.put(j, i, values);
-            }
-        }
+        return Enhancer.enhance(mat);
+    }
+
+    public static Mat enhance(Mat mat, int threshold, int parallelism) {
+        return Enhancer.enhance(mat, threshold, parallelism);
+    }
 
-        return mat;
+    public static Mat enhance(Mat mat, int threshold, int parallelism, BooleanSupplier cancelled) {
+        return Enhancer.enhance(mat, threshold, parallelism, cancelled);
     }
 }
\ No newline at end of file
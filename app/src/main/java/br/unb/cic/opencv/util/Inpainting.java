@@ -0,0 +1,262 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.photo.Photo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Removes glare from photos. The glare mask is split in connected components and each one is inpainted on its own
+ * padded bounding box, in parallel, so the cost follows the glare area instead of the image size. The multi-scale
+ * mode also computes the mask and inpaints on a pyramid level of the image and only upsamples the filled boxes.
+ */
+public class Inpainting {
+
+    public static final double RADIUS = 20;
+    public static final int DEFAULT_PROXY_SIZE = 640;
+
+    /**
+     * Pixels added around the inpainting radius of each component, so the interpolation has real neighbours
+     */
+    private static final int MARGIN = 2;
+
+    private Inpainting() {
+        throw new UnsupportedOperationException("No " + Inpainting.class.getSimpleName() + " instances for you!");
+    }
+
+    /**
+     * Inpaints the glare of the image at full resolution. Returns an RGB image with the size of the input
+     */
+    public static Mat inpaint(Mat rgba) {
+        return inpaint(rgba, Workers.NEVER_CANCELLED);
+    }
+
+    /**
+     * Same as {@link #inpaint(Mat)}, stopping with a CancellationException between components once cancelled
+     */
+    public static Mat inpaint(Mat rgba, BooleanSupplier cancelled) {
+        Mat mask = ImageProcessing.getMaskInRange(rgba);
+
+        Mat rgb = new Mat();
+        Imgproc.cvtColor(rgba, rgb, Imgproc.COLOR_RGBA2RGB);
+
+        try {
+            return fill(rgb, mask, RADIUS, Workers.DEFAULT_PARALLELISM, null, cancelled);
+        } finally {
+            rgb.release();
+            mask.release();
+        }
+    }
+
+    public static Mat inpaintMultiScale(Mat rgba) {
+        return inpaintMultiScale(rgba, DEFAULT_PROXY_SIZE, Workers.NEVER_CANCELLED);
+    }
+
+    public static Mat inpaintMultiScale(Mat rgba, int proxySize) {
+        return inpaintMultiScale(rgba, proxySize, Workers.NEVER_CANCELLED);
+    }
+
+    /**
+     * Computes the mask and inpaints on the first pyramid level whose largest side is at most proxySize. Returns
+     * an RGB image with the size of the input. Stops with a CancellationException between components once cancelled
+     */
+    public static Mat inpaintMultiScale(Mat rgba, int proxySize, BooleanSupplier cancelled) {
+        Mat out = new Mat();
+        Imgproc.cvtColor(rgba, out, Imgproc.COLOR_RGBA2RGB);
+
+        int scale = 1;
+        Mat proxy = out;
+        while (Math.max(proxy.cols(), proxy.rows()) > proxySize) {
+            Mat down = new Mat();
+            Imgproc.pyrDown(proxy, down);
+            if (proxy != out) proxy.release();
+            proxy = down;
+            scale *= 2;
+        }
+
+        if (scale == 1) {
+            out.release();
+            return inpaint(rgba, cancelled);
+        }
+
+        Mat mask = ImageProcessing.getMaskInRange(proxy);
+        List<Rect> regions = new ArrayList<>();
+        try {
+            Mat filled = fill(proxy, mask, Math.max(3, RADIUS / scale), Workers.DEFAULT_PARALLELISM, regions, cancelled);
+            for (Rect region : regions) {
+                paste(filled, mask, region, scale, out);
+            }
+            filled.release();
+        } catch (CancellationException e) {
+            out.release();
+            throw e;
+        } finally {
+            mask.release();
+            proxy.release();
+        }
+        return out;
+    }
+
+    static Mat fill(Mat image, Mat mask, double radius, int parallelism, List<Rect> regions) {
+        return fill(image, mask, radius, parallelism, regions, Workers.NEVER_CANCELLED);
+    }
+
+    /**
+     * Returns a copy of the image with every connected component of the mask inpainted. Each component is
+     * inpainted on its bounding box grown by the radius, with the whole mask over that box so glare of a nearby
+     * component is never used as a source. With parallelism > 1 components are inpainted on the shared
+     * {@link Workers} pool of that many threads from the untouched image, then written back one after the other,
+     * through their own label, so boxes may overlap.
+     * When regions is not null it receives the box of every component. Once cancelled the components left are
+     * skipped, and after the running ones are done everything is released and a CancellationException thrown
+     */
+    static Mat fill(Mat image, Mat mask, double radius, int parallelism, List<Rect> regions, BooleanSupplier cancelled) {
+        Mat out = image.clone();
+
+        Mat labels = new Mat(), stats = new Mat(), centroids = new Mat();
+        int count = Imgproc.connectedComponentsWithStats(mask, labels, stats, centroids) - 1;
+        centroids.release();
+
+        if (count > 0) {
+            int[] values = new int[(int) stats.total()];
+            stats.get(0, 0, values);
+            Rect[] boxes = new Rect[count];
+            int padding = (int) Math.ceil(radius) + MARGIN;
+            for (int i = 0; i < count; i++) {
+                boxes[i] = pad(values, (i + 1) * stats.cols(), padding, mask.cols(), mask.rows());
+            }
+
+            Mat[] patches = new Mat[count];
+            if (parallelism <= 1 || count == 1) {
+                inpaintBoxes(image, mask, boxes, patches, radius, 0, count, cancelled);
+            } else {
+                Workers.invoke(new ComponentTask(image, mask, boxes, patches, radius, 0, count, cancelled), parallelism);
+            }
+
+            if (cancelled.getAsBoolean()) {
+                for (Mat patch : patches) {
+                    if (patch != null) patch.release();
+                }
+                labels.release();
+                stats.release();
+                out.release();
+                throw new CancellationException("Inpainting cancelled");
+            }
+
+            Mat component = new Mat();
+            for (int i = 0; i < count; i++) {
+                Mat labelBox = labels.submat(boxes[i]);
+                Core.compare(labelBox, new Scalar(i + 1), component, Core.CMP_EQ);
+
+                Mat destination = out.submat(boxes[i]);
+                patches[i].copyTo(destination, component);
+
+                destination.release();
+                labelBox.release();
+                patches[i].release();
+            }
+            component.release();
+
+            if (regions != null) {
+                regions.addAll(Arrays.asList(boxes));
+            }
+        }
+
+        labels.release();
+        stats.release();
+        return out;
+    }
+
+    private static void inpaintBoxes(Mat image, Mat mask, Rect[] boxes, Mat[] patches, double radius, int from, int to,
+                                     BooleanSupplier cancelled) {
+        for (int i = from; i < to && !cancelled.getAsBoolean(); i++) {
+            Mat source = image.submat(boxes[i]);
+            Mat sourceMask = mask.submat(boxes[i]);
+
+            patches[i] = new Mat();
+            Photo.inpaint(source, sourceMask, patches[i], radius, Photo.INPAINT_TELEA);
+
+            source.release();
+            sourceMask.release();
+        }
+    }
+
+    /**
+     * Box of the component whose stats row starts at offset, grown by padding and clipped to the image
+     */
+    private static Rect pad(int[] stats, int offset, int padding, int cols, int rows) {
+        int x = Math.max(0, stats[offset + Imgproc.CC_STAT_LEFT] - padding);
+        int y = Math.max(0, stats[offset + Imgproc.CC_STAT_TOP] - padding);
+        int right = Math.min(cols, stats[offset + Imgproc.CC_STAT_LEFT] + stats[offset + Imgproc.CC_STAT_WIDTH] + padding);
+        int bottom = Math.min(rows, stats[offset + Imgproc.CC_STAT_TOP] + stats[offset + Imgproc.CC_STAT_HEIGHT] + padding);
+        return new Rect(x, y, right - x, bottom - y);
+    }
+
+    /**
+     * Upsamples the region of the proxy result and of its mask by scale and copies the masked pixels over out
+     */
+    static void paste(Mat filled, Mat mask, Rect region, int scale, Mat out) {
+        Rect target = new Rect(region.x * scale, region.y * scale, region.width * scale, region.height * scale);
+        target.width = Math.min(target.width, out.cols() - target.x);
+        target.height = Math.min(target.height, out.rows() - target.y);
+        Size size = target.size();
+
+        Mat source = filled.submat(region), sourceMask = mask.submat(region);
+        Mat patch = new Mat(), patchMask = new Mat();
+        Imgproc.resize(source, patch, size, 0, 0, Imgproc.INTER_LINEAR);
+        Imgproc.resize(sourceMask, patchMask, size, 0, 0, Imgproc.INTER_NEAREST);
+
+        Mat destination = out.submat(target);
+        patch.copyTo(destination, patchMask);
+
+        destination.release();
+        source.release();
+        sourceMask.release();
+        patch.release();
+        patchMask.release();
+    }
+
+    private static class ComponentTask extends RecursiveAction {
+
+        private final Mat image, mask;
+        private final Rect[] boxes;
+        private final Mat[] patches;
+        private final double radius;
+        private final int from, to;
+        private final BooleanSupplier cancelled;
+
+        ComponentTask(Mat image, Mat mask, Rect[] boxes, Mat[] patches, double radius, int from, int to,
+                      BooleanSupplier cancelled) {
+            this.image = image;
+            this.mask = mask;
+            this.boxes = boxes;
+            this.patches = patches;
+            this.radius = radius;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                inpaintBoxes(image, mask, boxes, patches, radius, from, to, cancelled);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComponentTask(image, mask, boxes, patches, radius, from, middle, cancelled),
+                    new ComponentTask(image, mask, boxes, patches, radius, middle, to, cancelled));
+        }
+    }
+}
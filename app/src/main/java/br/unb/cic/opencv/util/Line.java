@@ -4,6 +4,8 @@ import org.opencv.core.Point;
 
 public class Line {
 
+    static final double NEIGHBOUR_DISTANCE = 5;
+
     public Point start, end;
 
     public Line(Point start, Point end) {
@@ -12,7 +14,7 @@ public class Line {
     }
 
     public double size() {
-        return Math.sqrt((end.y - start.y) * (end.y - start.y) + (end.x - start.x) * (end.x - start.x));
+        return Segments.length(start.x, start.y, end.x, end.y);
     }
 
     public double theta() {
@@ -44,24 +46,11 @@ public class Line {
     }
 
     public double distanceBetween(Line line) {
-        // Lida com o caso de interseção
-        if (((line.start.x <= this.end.x && line.start.x >= this.start.x) ||
-                (line.end.x <= this.end.x && line.end.x >= this.start.x)) &&
-                ((line.start.y <= this.end.y && line.start.y >= this.start.y) ||
-                        (line.end.y <= this.end.y && line.end.y >= this.start.y))) {
-            return 0;
-        }
-        double min1 = Math.min(distanceBetween(line.start, this.start), distanceBetween(line.end, this.start));
-        double min2 = Math.min(distanceBetween(line.start, this.end), distanceBetween(line.end, this.end));
-        return Math.min(min1, min2);
-    }
-
-    private double distanceBetween(Point a, Point b) {
-        return Math.sqrt((a.y - b.y) * (a.y - b.y) + (a.x - b.x) * (a.x - b.x));
+        return Segments.distance(start.x, start.y, end.x, end.y, line.start.x, line.start.y, line.end.x, line.end.y);
     }
 
     public boolean isNeighbour(Line line) {
-        return distanceBetween(line) <= 5;
+        return distanceBetween(line) <= NEIGHBOUR_DISTANCE;
     }
 
     public boolean isHorizontal() {
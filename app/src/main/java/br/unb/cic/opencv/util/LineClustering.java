@@ -0,0 +1,158 @@
+package br.unb.cic.opencv.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Collapses the near-duplicate segments HoughLinesP returns along each edge into a few representative lines.
+ * <p>
+ * Every segment is described by its direction (folded into [-45°, 135°) so that horizontal and vertical
+ * lines never sit on the wrap-around) and its signed distance to the origin (rho). Segments are bucketed by
+ * direction, sorted by rho, and collinear neighbours are merged with a {@link DisjointSet}. Each group is
+ * replaced by one line covering all of its members.
+ */
+public class LineClustering {
+
+    private static final double ANGLE_STEP = Math.toRadians(5);
+    private static final double ANGLE_TOLERANCE = Math.toRadians(3);
+    private static final double RHO_TOLERANCE = 8;
+    private static final int MAX_PER_ORIENTATION = 8;
+
+    private static final int BINS = (int) Math.ceil(Math.PI / ANGLE_STEP);
+
+    private LineClustering() {
+        throw new UnsupportedOperationException("No " + LineClustering.class.getSimpleName() + " instances for you!");
+    }
+
+    public static Segments merge(Segments segments) {
+        int n = segments.size();
+        if (n < 2) return segments;
+
+        double[] phi = new double[n], rho = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            phi[i] = direction(segments.x1(i), segments.y1(i), segments.x2(i), segments.y2(i));
+            rho[i] = -segments.x1(i) * Math.sin(phi[i]) + segments.y1(i) * Math.cos(phi[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> bin(phi[i])).thenComparingDouble(i -> rho[i]));
+
+        int[] binStart = new int[BINS + 1];
+        for (int i = 0; i < n; i++) binStart[bin(phi[i]) + 1]++;
+        for (int b = 0; b < BINS; b++) binStart[b + 1] += binStart[b];
+
+        DisjointSet groups = new DisjointSet(n);
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            int b = bin(phi[i]);
+            for (int nb = b; nb <= b + 1; nb++) {
+                // the last bin borders the first one, where the same lines have phi - PI and so -rho
+                boolean wrapped = nb == BINS;
+                int bucket = wrapped ? 0 : nb;
+                double r = wrapped ? -rho[i] : rho[i];
+                for (int m = nb == b ? k + 1 : binStart[bucket]; m < binStart[bucket + 1]; m++) {
+                    int j = order[m];
+                    if (rho[j] - r > RHO_TOLERANCE) break;
+                    if (r - rho[j] > RHO_TOLERANCE) continue;
+                    if (angleBetween(phi[i], phi[j]) > ANGLE_TOLERANCE) continue;
+                    if (segments.isNeighbour(i, j) || overlap(segments, i, j, phi[i])) {
+                        groups.union(i, j);
+                    }
+                }
+            }
+        }
+
+        return representatives(segments, groups, phi);
+    }
+
+    /**
+     * Builds one line per group, along the direction of the group's longest member, and keeps the
+     * longest few per orientation bucket
+     */
+    private static Segments representatives(Segments segments, DisjointSet groups, double[] phi) {
+        int n = segments.size();
+        int[] longest = new int[n];
+        Arrays.fill(longest, -1);
+        for (int i = 0; i < n; i++) {
+            int root = groups.find(i);
+            if (longest[root] == -1 || segments.length(i) > segments.length(longest[root])) longest[root] = i;
+        }
+
+        double[] tMin = new double[n], tMax = new double[n], rhoSum = new double[n], weight = new double[n];
+        Arrays.fill(tMin, Double.POSITIVE_INFINITY);
+        Arrays.fill(tMax, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < n; i++) {
+            int root = groups.find(i);
+            double angle = phi[longest[root]];
+            double cos = Math.cos(angle), sin = Math.sin(angle);
+            double t1 = segments.x1(i) * cos + segments.y1(i) * sin;
+            double t2 = segments.x2(i) * cos + segments.y2(i) * sin;
+            tMin[root] = Math.min(tMin[root], Math.min(t1, t2));
+            tMax[root] = Math.max(tMax[root], Math.max(t1, t2));
+
+            double length = segments.length(i);
+            rhoSum[root] += (-segments.x1(i) * sin + segments.y1(i) * cos) * length;
+            weight[root] += length;
+        }
+
+        Segments merged = new Segments(n);
+        int[] bins = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (longest[i] == -1) continue;
+            double angle = phi[longest[i]];
+            double cos = Math.cos(angle), sin = Math.sin(angle);
+            double r = weight[i] > 0 ? rhoSum[i] / weight[i] : 0;
+            bins[merged.size()] = bin(angle);
+            merged.add(tMin[i] * cos - r * sin, tMin[i] * sin + r * cos, tMax[i] * cos - r * sin, tMax[i] * sin + r * cos);
+        }
+
+        return keepLongest(merged, bins);
+    }
+
+    private static Segments keepLongest(Segments merged, int[] bins) {
+        Integer[] order = new Integer[merged.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(merged::length).reversed());
+
+        int[] kept = new int[BINS];
+        Segments result = new Segments(merged.size());
+        for (int i : order) {
+            if (kept[bins[i]]++ < MAX_PER_ORIENTATION) {
+                result.add(merged.x1(i), merged.y1(i), merged.x2(i), merged.y2(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Direction of the segment, folded into [-PI/4, 3PI/4)
+     */
+    static double direction(double x1, double y1, double x2, double y2) {
+        double phi = Math.atan2(y2 - y1, x2 - x1);
+        if (phi < -Math.PI / 4) phi += Math.PI;
+        if (phi >= 3 * Math.PI / 4) phi -= Math.PI;
+        return phi;
+    }
+
+    /**
+     * Angle between two undirected lines, in [0, PI/2]
+     */
+    static double angleBetween(double phi1, double phi2) {
+        double difference = Math.abs(phi1 - phi2) % Math.PI;
+        return Math.min(difference, Math.PI - difference);
+    }
+
+    private static int bin(double phi) {
+        return Math.min(BINS - 1, (int) ((phi + Math.PI / 4) / ANGLE_STEP));
+    }
+
+    /**
+     * Whether the projections of segments i and j on the given direction overlap
+     */
+    private static boolean overlap(Segments segments, int i, int j, double phi) {
+        double cos = Math.cos(phi), sin = Math.sin(phi);
+        double a1 = segments.x1(i) * cos + segments.y1(i) * sin, a2 = segments.x2(i) * cos + segments.y2(i) * sin;
+        double b1 = segments.x1(j) * cos + segments.y1(j) * sin, b2 = segments.x2(j) * cos + segments.y2(j) * sin;
+        return Math.max(a1, a2) >= Math.min(b1, b2) && Math.max(b1, b2) >= Math.min(a1, a2);
+    }
+}
@@ -0,0 +1,46 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mats that live for a single camera frame. Every frame borrows its scratch Mats in the same order and
+ * returns all of them with {@link #reset()}; since OpenCV only reallocates a destination whose size or type
+ * changed, the steady state frame loop allocates nothing, neither in Java nor in native memory.
+ */
+public class MatArena {
+
+    private final List<Mat> mats = new ArrayList<>();
+    private int borrowed;
+
+    public Mat borrow() {
+        if (borrowed == mats.size()) {
+            mats.add(new Mat());
+        }
+        return mats.get(borrowed++);
+    }
+
+    /**
+     * Returns every borrowed Mat to the arena, their buffers are kept for the next frame
+     */
+    public void reset() {
+        borrowed = 0;
+    }
+
+    public int size() {
+        return mats.size();
+    }
+
+    /**
+     * Frees the native memory of every Mat, borrowed or not
+     */
+    public void release() {
+        for (Mat mat : mats) {
+            mat.release();
+        }
+        mats.clear();
+        borrowed = 0;
+    }
+}
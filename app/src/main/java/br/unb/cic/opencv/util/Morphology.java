@@ -0,0 +1,172 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Erosion and dilation with rectangular structuring elements.
+ * <p>
+ * A rectangle is separable, so it is applied as a horizontal and a vertical pass, and each pass uses the
+ * van Herk/Gil-Werman running min/max: the line is cut in blocks of the kernel size, a prefix and a suffix min/max
+ * is computed inside each block and every window is the min/max of one suffix and one prefix. That's about three
+ * comparisons per pixel and pass whatever the kernel size. Small kernels, and Mats that aren't continuous CV_8UC1,
+ * go to OpenCV with a cached structuring element. The anchor and border handling match OpenCV's defaults, pixels
+ * outside the image never affect the result.
+ */
+public class Morphology {
+
+    /**
+     * Below this size OpenCV's own rectangle filter is faster than copying the Mat to the Java heap
+     */
+    static final int MIN_VAN_HERK_SIZE = 15;
+
+    private static final Map<Long, Mat> ELEMENTS = new HashMap<>();
+
+    private Morphology() {
+        throw new UnsupportedOperationException("No " + Morphology.class.getSimpleName() + " instances for you!");
+    }
+
+    /**
+     * Structuring element of the given shape, built once and shared; callers must not modify or release it
+     */
+    public static Mat element(int shape, int width, int height) {
+        long key = ((long) shape << 42) | ((long) width << 21) | height;
+        synchronized (ELEMENTS) {
+            Mat element = ELEMENTS.get(key);
+            if (element == null) {
+                element = Imgproc.getStructuringElement(shape, new Size(width, height));
+                ELEMENTS.put(key, element);
+            }
+            return element;
+        }
+    }
+
+    public static void erode(Mat mat, int width, int height) {
+        apply(mat, width, height, false);
+    }
+
+    public static void dilate(Mat mat, int width, int height) {
+        apply(mat, width, height, true);
+    }
+
+    private static void apply(Mat mat, int width, int height, boolean max) {
+        if (width <= 1 && height <= 1) {
+            return;
+        }
+
+        boolean javaPath = mat.type() == CvType.CV_8UC1 && mat.isContinuous()
+                && Math.max(width, height) >= MIN_VAN_HERK_SIZE;
+        if (!javaPath) {
+            Mat element = element(Imgproc.MORPH_RECT, Math.max(1, width), Math.max(1, height));
+            if (max) {
+                Imgproc.dilate(mat, mat, element);
+            } else {
+                Imgproc.erode(mat, mat, element);
+            }
+            return;
+        }
+
+        int rows = mat.rows(), cols = mat.cols();
+        byte[] data = new byte[rows * cols];
+        mat.get(0, 0, data);
+        byte[] out = new byte[data.length];
+
+        if (width > 1) {
+            horizontal(data, out, rows, cols, width, max);
+            byte[] swap = data;
+            data = out;
+            out = swap;
+        }
+        if (height > 1) {
+            vertical(data, out, rows, cols, height, max);
+            data = out;
+        }
+
+        mat.put(0, 0, data);
+    }
+
+    /**
+     * Running min/max of size k along each row, the window of pixel x is [x - k / 2, x - k / 2 + k - 1]
+     */
+    static void horizontal(byte[] src, byte[] dst, int rows, int cols, int k, boolean max) {
+        int anchor = k / 2;
+        int padded = cols + k - 1;
+        int neutral = max ? 0 : 255;
+        int[] line = new int[padded];
+        int[] prefix = new int[padded];
+        int[] suffix = new int[padded];
+
+        for (int y = 0, offset = 0; y < rows; y++, offset += cols) {
+            for (int p = 0; p < padded; p++) {
+                int x = p - anchor;
+                line[p] = x >= 0 && x < cols ? src[offset + x] & 0xFF : neutral;
+            }
+
+            for (int start = 0; start < padded; start += k) {
+                int end = Math.min(start + k, padded);
+                prefix[start] = line[start];
+                for (int p = start + 1; p < end; p++) {
+                    prefix[p] = pick(prefix[p - 1], line[p], max);
+                }
+                suffix[end - 1] = line[end - 1];
+                for (int p = end - 2; p >= start; p--) {
+                    suffix[p] = pick(suffix[p + 1], line[p], max);
+                }
+            }
+
+            for (int x = 0; x < cols; x++) {
+                dst[offset + x] = (byte) (x % k == 0 ? suffix[x] : pick(suffix[x], prefix[x + k - 1], max));
+            }
+        }
+    }
+
+    /**
+     * Running min/max of size k along each column, the window of row y is [y - k / 2, y - k / 2 + k - 1].
+     * Works on whole rows at a time and only keeps the suffixes of one block and the prefixes of the next
+     */
+    static void vertical(byte[] src, byte[] dst, int rows, int cols, int k, boolean max) {
+        int anchor = k / 2;
+        int neutral = max ? 0 : 255;
+        int[] suffix = new int[k * cols];
+        int[] prefix = new int[k * cols];
+
+        for (int start = 0; start < rows; start += k) {
+            // suffixes of the block [start, start + k) and prefixes of the next one, in padded row coordinates
+            for (int i = k - 1; i >= 0; i--) {
+                int p = start + i;
+                for (int x = 0; x < cols; x++) {
+                    int value = row(src, p - anchor, x, rows, cols, neutral);
+                    suffix[i * cols + x] = i == k - 1 ? value : pick(suffix[(i + 1) * cols + x], value, max);
+                }
+            }
+            for (int i = 0; i < k; i++) {
+                int p = start + k + i;
+                for (int x = 0; x < cols; x++) {
+                    int value = row(src, p - anchor, x, rows, cols, neutral);
+                    prefix[i * cols + x] = i == 0 ? value : pick(prefix[(i - 1) * cols + x], value, max);
+                }
+            }
+
+            int end = Math.min(start + k, rows);
+            for (int y = start; y < end; y++) {
+                int i = y - start;
+                for (int x = 0, offset = y * cols; x < cols; x++, offset++) {
+                    dst[offset] = (byte) (i == 0 ? suffix[x] : pick(suffix[i * cols + x], prefix[(i - 1) * cols + x], max));
+                }
+            }
+        }
+    }
+
+    private static int row(byte[] src, int y, int x, int rows, int cols, int neutral) {
+        return y >= 0 && y < rows ? src[y * cols + x] & 0xFF : neutral;
+    }
+
+    private static int pick(int a, int b, boolean max) {
+        return max ? Math.max(a, b) : Math.min(a, b);
+    }
+}
@@ -0,0 +1,78 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.Point;
+
+import java.util.Arrays;
+
+/**
+ * Candidate document quads stored as a flat buffer of tl, tr, bl, br corners (8 doubles per quad).
+ * {@link Square} is a view over a single quad.
+ */
+public class Quads {
+
+    private double[] corners = new double[8 * 8];
+    private int size;
+
+    public void add(double tlx, double tly, double trx, double try_, double blx, double bly, double brx, double bry) {
+        if (8 * size == corners.length) corners = Arrays.copyOf(corners, 2 * corners.length);
+        int o = 8 * size;
+        corners[o] = tlx;
+        corners[o + 1] = tly;
+        corners[o + 2] = trx;
+        corners[o + 3] = try_;
+        corners[o + 4] = blx;
+        corners[o + 5] = bly;
+        corners[o + 6] = brx;
+        corners[o + 7] = bry;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Fills out with the area of every quad, as {@link Square#area()} defines it
+     */
+    public static void areas(double[] corners, int count, double[] out) {
+        for (int q = 0; q < count; q++) {
+            int o = 8 * q;
+            out[q] = area(corners[o], corners[o + 1], corners[o + 2], corners[o + 3],
+                    corners[o + 4], corners[o + 5], corners[o + 6], corners[o + 7]);
+        }
+    }
+
+    /**
+     * Index of the quad with the largest area (the first one on ties), or -1 if there are none
+     */
+    public int largest() {
+        double[] areas = new double[size];
+        areas(corners, size, areas);
+
+        int best = -1;
+        for (int q = 0; q < size; q++) {
+            if (best == -1 || areas[q] > areas[best]) best = q;
+        }
+        return best;
+    }
+
+    public Square square(int q) {
+        int o = 8 * q;
+        return new Square(new Point(corners[o], corners[o + 1]), new Point(corners[o + 2], corners[o + 3]),
+                new Point(corners[o + 4], corners[o + 5]), new Point(corners[o + 6], corners[o + 7]));
+    }
+
+    /**
+     * Largest product of a horizontal and a vertical side, each side length computed once
+     */
+    static double area(double tlx, double tly, double trx, double try_, double blx, double bly, double brx, double bry) {
+        double left = Segments.length(blx, bly, tlx, tly);
+        double right = Segments.length(brx, bry, trx, try_);
+        double top = Segments.length(tlx, tly, trx, try_);
+        double bottom = Segments.length(blx, bly, brx, bry);
+
+        double max1 = Math.max(bottom * left, bottom * right);
+        double max2 = Math.max(top * left, top * right);
+        return Math.max(max1, max2);
+    }
+}
@@ -0,0 +1,199 @@
+package br.unb.cic.opencv.util;
+
+import java.util.Arrays;
+
+/**
+ * Finds the pairwise intersections of a set of segments using a uniform grid, so that only
+ * segments whose bounding boxes share a cell are tested.
+ * <p>
+ * Segments are given as a flat array of x1, y1, x2, y2 (start then end of each segment).
+ * Hits are reported in (i, j) order with i &lt; j, exactly as a brute force double loop would,
+ * and are stored in primitive buffers that are reused between calls.
+ */
+public class SegmentIntersector {
+
+    private static final int MAX_CELLS_PER_AXIS = 64;
+
+    private int size;
+    private int[] first = new int[64], second = new int[64];
+    private double[] xs = new double[64], ys = new double[64];
+
+    private int[] cellStart = new int[0], cellSegments = new int[0];
+    private int[] seen = new int[0], candidates = new int[0];
+
+    /**
+     * Collects every intersection inside [0, width) x [0, height) and returns how many were found
+     */
+    public int findIntersections(double[] segments, int n, double width, double height) {
+        size = 0;
+        if (n < 2) return 0;
+
+        int cells = cellsPerAxis(segments, n, width, height);
+        double cellWidth = width / cells, cellHeight = height / cells;
+        buildGrid(segments, n, cells, cellWidth, cellHeight);
+
+        if (seen.length < n) {
+            seen = new int[n];
+            candidates = new int[n];
+        }
+        Arrays.fill(seen, 0, n, -1);
+
+        double[] pt = new double[2];
+        for (int i = 0; i < n; i++) {
+            int o = 4 * i;
+            int minCx = cell(Math.min(segments[o], segments[o + 2]), cellWidth, cells);
+            int maxCx = cell(Math.max(segments[o], segments[o + 2]), cellWidth, cells);
+            int minCy = cell(Math.min(segments[o + 1], segments[o + 3]), cellHeight, cells);
+            int maxCy = cell(Math.max(segments[o + 1], segments[o + 3]), cellHeight, cells);
+
+            int found = 0;
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                for (int cx = minCx; cx <= maxCx; cx++) {
+                    int c = cy * cells + cx;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int j = cellSegments[k];
+                        if (j <= i || seen[j] == i) continue;
+                        seen[j] = i;
+                        if (boxesOverlap(segments, i, j)) candidates[found++] = j;
+                    }
+                }
+            }
+
+            Arrays.sort(candidates, 0, found);
+            for (int k = 0; k < found; k++) {
+                int j = candidates[k];
+                if (intersect(segments, i, j, pt) && pt[0] >= 0 && pt[1] >= 0 && pt[0] < width && pt[1] < height) {
+                    add(i, j, pt[0], pt[1]);
+                }
+            }
+        }
+
+        return size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int first(int hit) {
+        return first[hit];
+    }
+
+    public int second(int hit) {
+        return second[hit];
+    }
+
+    public double x(int hit) {
+        return xs[hit];
+    }
+
+    public double y(int hit) {
+        return ys[hit];
+    }
+
+    /**
+     * Writes the intersection of segments i and j into pt and returns true, or returns false if they don't cross
+     * or are parallel
+     */
+    static boolean intersect(double[] segments, int i, int j, double[] pt) {
+        int a = 4 * i, b = 4 * j;
+        double x1 = segments[a + 2], x2 = segments[a], y1 = segments[a + 3], y2 = segments[a + 1];
+        double x3 = segments[b + 2], x4 = segments[b], y3 = segments[b + 3], y4 = segments[b + 1];
+        double d = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+
+        if (d == 0) return false;
+
+        double x = ((x1 * y2 - y1 * x2) * (x3 - x4) - (x1 - x2) * (x3 * y4 - y3 * x4)) / d;
+        double y = ((x1 * y2 - y1 * x2) * (y3 - y4) - (y1 - y2) * (x3 * y4 - y3 * x4)) / d;
+
+        if (x < Math.min(x1, x2) || x > Math.max(x1, x2) || y < Math.min(y1, y2) || y > Math.max(y1, y2)) {
+            return false;
+        }
+        if (x < Math.min(x3, x4) || x > Math.max(x3, x4) || y < Math.min(y3, y4) || y > Math.max(y3, y4)) {
+            return false;
+        }
+        pt[0] = x;
+        pt[1] = y;
+        return true;
+    }
+
+    private static boolean boxesOverlap(double[] segments, int i, int j) {
+        int a = 4 * i, b = 4 * j;
+        return Math.max(segments[a], segments[a + 2]) >= Math.min(segments[b], segments[b + 2])
+                && Math.max(segments[b], segments[b + 2]) >= Math.min(segments[a], segments[a + 2])
+                && Math.max(segments[a + 1], segments[a + 3]) >= Math.min(segments[b + 1], segments[b + 3])
+                && Math.max(segments[b + 1], segments[b + 3]) >= Math.min(segments[a + 1], segments[a + 3]);
+    }
+
+    /**
+     * Picks cells about as large as the average segment, so each segment lands in a handful of them
+     */
+    private static int cellsPerAxis(double[] segments, int n, double width, double height) {
+        double extent = 0;
+        for (int o = 0; o < 4 * n; o += 4) {
+            extent += Math.max(Math.abs(segments[o + 2] - segments[o]), Math.abs(segments[o + 3] - segments[o + 1]));
+        }
+        extent = Math.max(1, extent / n);
+
+        int cells = (int) Math.min(Math.sqrt(n), Math.max(width, height) / extent);
+        return Math.max(1, Math.min(MAX_CELLS_PER_AXIS, cells));
+    }
+
+    private static int cell(double coordinate, double cellSize, int cells) {
+        int c = (int) Math.floor(coordinate / cellSize);
+        return c < 0 ? 0 : (c >= cells ? cells - 1 : c);
+    }
+
+    /**
+     * Registers every segment in each cell its bounding box touches, in compressed row form
+     */
+    private void buildGrid(double[] segments, int n, int cells, double cellWidth, double cellHeight) {
+        int cellCount = cells * cells;
+        if (cellStart.length < cellCount + 1) cellStart = new int[cellCount + 1];
+        Arrays.fill(cellStart, 0, cellCount + 1, 0);
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < n; i++) {
+                int o = 4 * i;
+                int minCx = cell(Math.min(segments[o], segments[o + 2]), cellWidth, cells);
+                int maxCx = cell(Math.max(segments[o], segments[o + 2]), cellWidth, cells);
+                int minCy = cell(Math.min(segments[o + 1], segments[o + 3]), cellHeight, cells);
+                int maxCy = cell(Math.max(segments[o + 1], segments[o + 3]), cellHeight, cells);
+
+                for (int cy = minCy; cy <= maxCy; cy++) {
+                    for (int cx = minCx; cx <= maxCx; cx++) {
+                        int c = cy * cells + cx;
+                        if (pass == 0) {
+                            cellStart[c + 1]++;
+                        } else {
+                            cellSegments[cellStart[c]++] = i;
+                        }
+                    }
+                }
+            }
+
+            if (pass == 0) {
+                for (int c = 0; c < cellCount; c++) cellStart[c + 1] += cellStart[c];
+                if (cellSegments.length < cellStart[cellCount]) cellSegments = new int[cellStart[cellCount]];
+            } else {
+                // the fill pass advanced every start to the next cell's start, shift them back
+                for (int c = cellCount; c > 0; c--) cellStart[c] = cellStart[c - 1];
+                cellStart[0] = 0;
+            }
+        }
+    }
+
+    private void add(int i, int j, double x, double y) {
+        if (size == first.length) {
+            first = Arrays.copyOf(first, size * 2);
+            second = Arrays.copyOf(second, size * 2);
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        first[size] = i;
+        second[size] = j;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+}
@@ -0,0 +1,140 @@
+package br.unb.cic.opencv.util;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Struct-of-arrays store of line segments: a flat x1, y1, x2, y2 buffer plus the length and angle of every
+ * segment, computed once when it is added. {@link Line} is a view over the same math for single segments.
+ */
+public class Segments {
+
+    private double[] coords;
+    private double[] lengths, thetas;
+    private int size;
+
+    public Segments(int capacity) {
+        capacity = Math.max(capacity, 4);
+        coords = new double[4 * capacity];
+        lengths = new double[capacity];
+        thetas = new double[capacity];
+    }
+
+    /**
+     * Reads the output of HoughLinesP (one CV_32SC4 row per segment) with a single bulk copy.
+     * Segments are stored last row first, the order bestApproach always used
+     */
+    public static Segments fromHough(Mat lines) {
+        int n = lines.rows();
+        Segments segments = new Segments(n);
+        if (n == 0) return segments;
+
+        int[] data = new int[4 * n];
+        lines.get(0, 0, data);
+        for (int i = n - 1; i >= 0; i--) {
+            segments.add(data[4 * i], data[4 * i + 1], data[4 * i + 2], data[4 * i + 3]);
+        }
+        return segments;
+    }
+
+    public static Segments of(List<Line> lines) {
+        Segments segments = new Segments(lines.size());
+        for (Line line : lines) segments.add(line.start.x, line.start.y, line.end.x, line.end.y);
+        return segments;
+    }
+
+    public void add(double x1, double y1, double x2, double y2) {
+        if (size == lengths.length) {
+            coords = Arrays.copyOf(coords, 8 * size);
+            lengths = Arrays.copyOf(lengths, 2 * size);
+            thetas = Arrays.copyOf(thetas, 2 * size);
+        }
+        int o = 4 * size;
+        coords[o] = x1;
+        coords[o + 1] = y1;
+        coords[o + 2] = x2;
+        coords[o + 3] = y2;
+        lengths[size] = length(x1, y1, x2, y2);
+        thetas[size] = Math.acos(Math.abs(x2 - x1) / lengths[size]);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double x1(int i) {
+        return coords[4 * i];
+    }
+
+    public double y1(int i) {
+        return coords[4 * i + 1];
+    }
+
+    public double x2(int i) {
+        return coords[4 * i + 2];
+    }
+
+    public double y2(int i) {
+        return coords[4 * i + 3];
+    }
+
+    public double length(int i) {
+        return lengths[i];
+    }
+
+    public double theta(int i) {
+        return thetas[i];
+    }
+
+    /**
+     * The backing x1, y1, x2, y2 buffer; only the first 4 * size() values are meaningful
+     */
+    public double[] coords() {
+        return coords;
+    }
+
+    /**
+     * Runs the batch intersection of all segments, the hits are left in the intersector
+     */
+    public int intersections(SegmentIntersector intersector, double width, double height) {
+        return intersector.findIntersections(coords, size, width, height);
+    }
+
+    public Line line(int i) {
+        return new Line(new Point(x1(i), y1(i)), new Point(x2(i), y2(i)));
+    }
+
+    public List<Line> lines() {
+        List<Line> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) lines.add(line(i));
+        return lines;
+    }
+
+    static double length(double x1, double y1, double x2, double y2) {
+        return Math.sqrt((y2 - y1) * (y2 - y1) + (x2 - x1) * (x2 - x1));
+    }
+
+    /**
+     * Distance between segments a and b, zero when b reaches into the box spanned by a
+     */
+    static double distance(double ax1, double ay1, double ax2, double ay2,
+                           double bx1, double by1, double bx2, double by2) {
+        // Lida com o caso de interseção
+        if (((bx1 <= ax2 && bx1 >= ax1) || (bx2 <= ax2 && bx2 >= ax1)) &&
+                ((by1 <= ay2 && by1 >= ay1) || (by2 <= ay2 && by2 >= ay1))) {
+            return 0;
+        }
+        double min1 = Math.min(length(bx1, by1, ax1, ay1), length(bx2, by2, ax1, ay1));
+        double min2 = Math.min(length(bx1, by1, ax2, ay2), length(bx2, by2, ax2, ay2));
+        return Math.min(min1, min2);
+    }
+
+    public boolean isNeighbour(int i, int j) {
+        return distance(x1(i), y1(i), x2(i), y2(i), x1(j), y1(j), x2(j), y2(j)) <= Line.NEIGHBOUR_DISTANCE;
+    }
+}
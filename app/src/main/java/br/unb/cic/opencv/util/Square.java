@@ -4,7 +4,7 @@ import org.opencv.core.Point;
 
 import java.io.Serializable;
 
-class Square implements Serializable {
+public class Square implements Serializable {
 
     public Line left, right, top, bottom;
     public Point tl, tr, bl, br;
@@ -22,9 +22,15 @@ class Square implements Serializable {
     }
 
     public double area() {
-        double max1 = Math.max(this.bottom.size() * this.left.size(), this.bottom.size() * this.right.size());
-        double max2 = Math.max(this.top.size() * this.left.size(), this.top.size() * this.right.size());
-        return Math.max(max1, max2);
+        return Quads.area(tl.x, tl.y, tr.x, tr.y, bl.x, bl.y, br.x, br.y);
+    }
+
+    /**
+     * Same corners in an image resized by the given factor
+     */
+    public Square scale(double factor) {
+        return new Square(new Point(tl.x * factor, tl.y * factor), new Point(tr.x * factor, tr.y * factor),
+                new Point(bl.x * factor, bl.y * factor), new Point(br.x * factor, br.y * factor));
     }
 
 }
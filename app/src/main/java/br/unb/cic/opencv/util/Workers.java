@@ -0,0 +1,34 @@
+package br.unb.cic.opencv.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The ForkJoinPools shared by the image steps that split their work, one per parallelism level, created on first
+ * use and kept so no call pays for starting and stopping threads
+ */
+public class Workers {
+
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Cancellation check of the steps that run where nothing can cancel them
+     */
+    public static final BooleanSupplier NEVER_CANCELLED = () -> false;
+
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private Workers() {
+        throw new UnsupportedOperationException("No " + Workers.class.getSimpleName() + " instances for you!");
+    }
+
+    /**
+     * Runs the task on the shared pool of the given parallelism and waits for it
+     */
+    static <T> T invoke(ForkJoinTask<T> task, int parallelism) {
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new).invoke(task);
+    }
+}
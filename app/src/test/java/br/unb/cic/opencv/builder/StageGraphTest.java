@@ -0,0 +1,77 @@
+package br.unb.cic.opencv.builder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StageGraphTest {
+
+    @Test
+    public void testGrayMovesAheadOfBlur() {
+        StageGraph graph = new StageGraph().add(Stage.RESIZE).add(Stage.GAUSSIAN_3).add(Stage.RGB_TO_GRAY).add(Stage.BEST_APPROACH);
+
+        StageGraph plan = graph.optimise();
+
+        assertEquals("[RESIZE, RGB_TO_GRAY, GAUSSIAN_3*, BEST_APPROACH]", plan.toString());
+    }
+
+    @Test
+    public void testGrayNeverCrossesResize() {
+        StageGraph graph = new StageGraph().add(Stage.GAUSSIAN_3).add(Stage.RESIZE).add(Stage.RGB_TO_GRAY);
+
+        assertEquals("[GAUSSIAN_3, RESIZE, RGB_TO_GRAY]", graph.optimise().toString());
+    }
+
+    @Test
+    public void testGrayNeverCrossesNonLinearStages() {
+        StageGraph graph = new StageGraph().add(Stage.ENHANCE, 165, 1).add(Stage.GAUSSIAN_3).add(Stage.RGB_TO_GRAY);
+
+        assertEquals(stages(Stage.ENHANCE, Stage.RGB_TO_GRAY, Stage.GAUSSIAN_3), stages(graph.optimise()));
+    }
+
+    @Test
+    public void testRepeatedStagesAreDropped() {
+        StageGraph graph = new StageGraph().add(Stage.RESIZE).add(Stage.RESIZE)
+                .add(Stage.RGB_TO_GRAY).add(Stage.GAUSSIAN_3).add(Stage.RGB_TO_GRAY);
+
+        assertEquals("[RESIZE, RGB_TO_GRAY, GAUSSIAN_3*]", graph.optimise().toString());
+    }
+
+    @Test
+    public void testFirstStageIsNeverFused() {
+        StageGraph plan = new StageGraph().add(Stage.GAUSSIAN_3).add(Stage.GAUSSIAN_3).optimise();
+
+        assertFalse(plan.nodes().get(0).isFused());
+        assertTrue(plan.nodes().get(1).isFused());
+    }
+
+    @Test
+    public void testArgumentsAreKept() {
+        StageGraph plan = new StageGraph().add(Stage.RESIZE).add(Stage.ENHANCE, 200, 4).optimise();
+
+        assertEquals("[RESIZE, ENHANCE[200, 4]]", plan.toString());
+    }
+
+    @Test
+    public void testOptimiseLeavesGraphUntouched() {
+        StageGraph graph = new StageGraph().add(Stage.GAUSSIAN_3).add(Stage.RGB_TO_GRAY);
+        graph.optimise();
+
+        assertEquals("[GAUSSIAN_3, RGB_TO_GRAY]", graph.toString());
+    }
+
+    private static List<Stage> stages(Stage... stages) {
+        List<Stage> list = new ArrayList<>();
+        for (Stage stage : stages) list.add(stage);
+        return list;
+    }
+
+    private static List<Stage> stages(StageGraph graph) {
+        List<Stage> list = new ArrayList<>();
+        for (StageGraph.Node node : graph.nodes()) list.add(node.stage());
+        return list;
+    }
+}
@@ -0,0 +1,148 @@
+package br.unb.cic.opencv.paint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrokeHistoryTest {
+
+    private static final int WIDTH = 200, HEIGHT = 150;
+
+    private ArraySurface surface;
+
+    @Before
+    public void setUp() {
+        surface = new ArraySurface(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void testUndoRestoresTouchedTiles() {
+        StrokeHistory history = new StrokeHistory(surface, Long.MAX_VALUE);
+        int[] before = surface.pixels.clone();
+
+        stroke(history, 10, 10, 100, 20, 7);
+        int[] after = surface.pixels.clone();
+
+        assertTrue(history.undo());
+        assertArrayEquals(before, surface.pixels);
+        assertTrue(history.redo());
+        assertArrayEquals(after, surface.pixels);
+    }
+
+    @Test
+    public void testOnlyTouchedTilesAreSaved() {
+        StrokeHistory history = new StrokeHistory(surface, Long.MAX_VALUE);
+
+        stroke(history, 0, 0, 10, 10, 1);
+        assertEquals(64 * 64 * 4, history.bytes());
+
+        // last column and row of tiles are smaller than 64x64
+        stroke(history, 195, 145, 199, 149, 2);
+        assertEquals(64 * 64 * 4 + 8 * 22 * 4, history.bytes());
+    }
+
+    @Test
+    public void testUndoSequenceInOrder() {
+        StrokeHistory history = new StrokeHistory(surface, Long.MAX_VALUE);
+        int[] start = surface.pixels.clone();
+
+        stroke(history, 0, 0, 120, 120, 1);
+        int[] first = surface.pixels.clone();
+        stroke(history, 50, 50, 190, 140, 2);
+
+        history.undo();
+        assertArrayEquals(first, surface.pixels);
+        history.undo();
+        assertArrayEquals(start, surface.pixels);
+        assertFalse(history.undo());
+    }
+
+    @Test
+    public void testNewStrokeClearsRedo() {
+        StrokeHistory history = new StrokeHistory(surface, Long.MAX_VALUE);
+
+        stroke(history, 0, 0, 10, 10, 1);
+        history.undo();
+        assertTrue(history.canRedo());
+
+        stroke(history, 100, 100, 110, 110, 2);
+        assertFalse(history.canRedo());
+        assertEquals(1, history.size());
+        assertEquals(64 * 64 * 4, history.bytes());
+    }
+
+    @Test
+    public void testOldestEntriesAreEvicted() {
+        long tile = 64 * 64 * 4;
+        StrokeHistory history = new StrokeHistory(surface, 3 * tile);
+
+        for (int i = 0; i < 5; i++) {
+            stroke(history, 0, 0, 10, 10, i + 1);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(3 * tile, history.bytes());
+
+        history.undo();
+        history.undo();
+        history.undo();
+        assertFalse(history.canUndo());
+        // the two oldest strokes were evicted, so the surface goes back to the second one
+        assertEquals(2, surface.pixels[0]);
+    }
+
+    @Test
+    public void testLatestStrokeIsKeptOverCap() {
+        StrokeHistory history = new StrokeHistory(surface, 1);
+
+        stroke(history, 0, 0, 199, 149, 1);
+
+        assertTrue(history.canUndo());
+    }
+
+    /**
+     * Touches and records the rectangle, then fills it with the value like a rasterised stroke
+     */
+    private void stroke(StrokeHistory history, int left, int top, int right, int bottom, int value) {
+        history.touch(left, top, right, bottom);
+        history.record();
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                surface.pixels[y * WIDTH + x] = value;
+            }
+        }
+    }
+
+    private static class ArraySurface implements StrokeHistory.Surface {
+        final int width, height;
+        final int[] pixels;
+
+        ArraySurface(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.pixels = new int[width * height];
+            for (int i = 0; i < pixels.length; i++) pixels[i] = -i;
+        }
+
+        @Override
+        public int width() {
+            return width;
+        }
+
+        @Override
+        public int height() {
+            return height;
+        }
+
+        @Override
+        public void read(int x, int y, int w, int h, int[] out) {
+            for (int row = 0; row < h; row++) System.arraycopy(pixels, (y + row) * width + x, out, row * w, w);
+        }
+
+        @Override
+        public void write(int x, int y, int w, int h, int[] in) {
+            for (int row = 0; row < h; row++) System.arraycopy(in, row * w, pixels, (y + row) * width + x, w);
+        }
+    }
+}
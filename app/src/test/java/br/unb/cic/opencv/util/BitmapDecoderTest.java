@@ -0,0 +1,31 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BitmapDecoderTest {
+
+    @Test
+    public void testSmallImagesAreNotSampled() {
+        assertEquals(1, BitmapDecoder.sampleSize(800, 600, 1280));
+        assertEquals(1, BitmapDecoder.sampleSize(2559, 1920, 1280));
+    }
+
+    @Test
+    public void testLargestSideStaysAboveTarget() {
+        assertEquals(2, BitmapDecoder.sampleSize(2560, 1920, 1280));
+        assertEquals(2, BitmapDecoder.sampleSize(4032, 3024, 1280));
+        assertEquals(4, BitmapDecoder.sampleSize(3024, 8000, 1280));
+        assertEquals(4, BitmapDecoder.sampleSize(8000, 6000, 1280));
+    }
+
+    @Test
+    public void testSampledSizeWithinTwiceTheTarget() {
+        for (int size = 1280; size < 20000; size += 37) {
+            int sampled = size / BitmapDecoder.sampleSize(size, size / 2, 1280);
+            assertTrue(sampled >= 1280);
+            assertTrue(sampled < 2 * 1280);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClusterNearestTest {
+
+    @Test
+    public void testNearestPicksClosestCenter() {
+        float[] centers = {0, 0, 0, 255, 255, 255};
+        byte[] pixels = {10, 20, 5, (byte) 200, (byte) 250, (byte) 240, (byte) 127, (byte) 127, (byte) 127, (byte) 128, (byte) 128, (byte) 128};
+        int[] labels = new int[4];
+
+        Cluster.nearest(pixels, 4, 3, centers, labels);
+
+        assertArrayEquals(new int[]{0, 1, 0, 1}, labels);
+    }
+
+    @Test
+    public void testNearestMatchesBruteForce() {
+        Random random = new Random(7);
+        int channels = 4, k = 5, count = 1000;
+        float[] centers = new float[k * channels];
+        for (int i = 0; i < centers.length; i++) centers[i] = random.nextInt(256);
+        byte[] pixels = new byte[count * channels];
+        random.nextBytes(pixels);
+        int[] labels = new int[count];
+
+        Cluster.nearest(pixels, count, channels, centers, labels);
+
+        for (int p = 0; p < count; p++) {
+            double chosen = distance(pixels, p, centers, labels[p], channels);
+            for (int c = 0; c < k; c++) {
+                assertTrue(chosen <= distance(pixels, p, centers, c, channels));
+            }
+        }
+    }
+
+    @Test
+    public void testNearestOnlyLabelsCount() {
+        int[] labels = {-1, -1, -1};
+        Cluster.nearest(new byte[9], 2, 3, new float[]{0, 0, 0}, labels);
+
+        assertArrayEquals(new int[]{0, 0, -1}, labels);
+    }
+
+    @Test
+    public void testDriftIgnoresCenterOrder() {
+        float[] exact = {0, 0, 0, 200, 200, 200};
+        float[] swapped = {200, 200, 200, 0, 0, 0};
+
+        assertEquals(0, Cluster.drift(exact, swapped, 3), 1e-9);
+    }
+
+    @Test
+    public void testDriftIsLargestCenterDistance() {
+        float[] exact = {0, 0, 0, 200, 200, 200};
+        float[] approximate = {3, 4, 0, 200, 200, 201};
+
+        assertEquals(5, Cluster.drift(exact, approximate, 3), 1e-9);
+    }
+
+    private static double distance(byte[] pixels, int p, float[] centers, int c, int channels) {
+        double sum = 0;
+        for (int ch = 0; ch < channels; ch++) {
+            double d = (pixels[p * channels + ch] & 0xFF) - centers[c * channels + ch];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,39 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DisjointSetTest {
+
+    @Test
+    public void testSingletons() {
+        DisjointSet set = new DisjointSet(3);
+        assertEquals(0, set.find(0));
+        assertEquals(2, set.find(2));
+        assertFalse(set.connected(0, 1));
+    }
+
+    @Test
+    public void testUnionIsTransitive() {
+        DisjointSet set = new DisjointSet(6);
+        assertTrue(set.union(0, 1));
+        assertTrue(set.union(2, 3));
+        assertTrue(set.union(1, 3));
+        assertFalse(set.union(0, 2));
+
+        assertTrue(set.connected(0, 3));
+        assertFalse(set.connected(0, 4));
+        assertEquals(set.find(2), set.find(1));
+    }
+
+    @Test
+    public void testLongChain() {
+        int n = 100000;
+        DisjointSet set = new DisjointSet(n);
+        for (int i = 1; i < n; i++) set.union(i - 1, i);
+
+        int root = set.find(0);
+        for (int i = 0; i < n; i++) assertEquals(root, set.find(i));
+    }
+}
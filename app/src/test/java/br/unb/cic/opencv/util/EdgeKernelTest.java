@@ -0,0 +1,101 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EdgeKernelTest {
+
+    @Test
+    public void testFlatImageHasNoEdges() {
+        int[] image = new int[16 * 12];
+        Arrays.fill(image, 0xff808080);
+
+        for (int value : EdgeKernel.edges(image, 16, 12)) assertEquals(0, value);
+    }
+
+    @Test
+    public void testLumaWeights() {
+        float[] luma = EdgeKernel.luma(new int[]{0xffff0000, 0xff00ff00, 0xff0000ff, 0xffffffff});
+
+        assertEquals(76.245f, luma[0], 1e-3);
+        assertEquals(149.685f, luma[1], 1e-3);
+        assertEquals(29.07f, luma[2], 1e-3);
+        assertEquals(255f, luma[3], 1e-3);
+    }
+
+    @Test
+    public void testVerticalStep() {
+        int width = 8, height = 4;
+        int[] image = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image[y * width + x] = x < 4 ? 0xff000000 : 0xffffffff;
+            }
+        }
+
+        int[] edges = EdgeKernel.edges(image, width, height);
+
+        // blurred row: 0 0 0 64 191 255 255 255, so gx saturates on the two pixels at each side of the step
+        int[] expected = {0, 0, 128, 128, 128, 128, 0, 0};
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("x " + x + " y " + y, expected[x], edges[y * width + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testTransposeSymmetry() {
+        int width = 23, height = 17;
+        int[] image = new int[width * height], transposed = new int[width * height];
+        Random random = new Random(11);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = 0xff000000 | random.nextInt(0x1000000);
+                image[y * width + x] = pixel;
+                transposed[x * height + y] = pixel;
+            }
+        }
+
+        int[] edges = EdgeKernel.edges(image, width, height);
+        int[] transposedEdges = EdgeKernel.edges(transposed, height, width);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(edges[y * width + x], transposedEdges[x * height + y]);
+            }
+        }
+    }
+
+    /**
+     * A synthetic preview frame: a bright page on a dark table, with sensor noise
+     */
+    @Test
+    public void testRecordedFrameStandIn() {
+        int width = 160, height = 120;
+        int[] frame = new int[width * height];
+        Random random = new Random(7);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean page = x >= 40 && x < 120 && y >= 30 && y < 90;
+                int level = (page ? 220 : 40) + random.nextInt(7) - 3;
+                frame[y * width + x] = 0xff000000 | level << 16 | level << 8 | level;
+            }
+        }
+
+        int[] edges = EdgeKernel.edges(frame, width, height);
+
+        for (int y = 35; y < 85; y++) {
+            assertTrue(edges[y * width + 39] > 100);
+            assertTrue(edges[y * width + 80] < 20);
+        }
+        for (int x = 45; x < 115; x++) {
+            assertTrue(edges[29 * width + x] > 100);
+            assertTrue(edges[10 * width + x] < 20);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EnhancerTest {
+
+    @Test
+    public void testWhitenAboveThreshold() {
+        byte[] data = {(byte) 200, (byte) 170, (byte) 165, 10, 20, 30};
+        Enhancer.whiten(data, 3, 165);
+
+        assertArrayEquals(new byte[]{(byte) 255, (byte) 255, (byte) 255, 10, 20, 30}, data);
+    }
+
+    @Test
+    public void testWhitenNeedsAllChannels() {
+        byte[] data = {(byte) 200, (byte) 164, (byte) 200};
+        Enhancer.whiten(data, 3, 165);
+
+        assertArrayEquals(new byte[]{(byte) 200, (byte) 164, (byte) 200}, data);
+    }
+
+    @Test
+    public void testWhitenMatchesPerPixelLoop() {
+        Random random = new Random(42);
+        byte[] data = new byte[640 * 480 * 3];
+        random.nextBytes(data);
+        byte[] expected = data.clone();
+
+        for (int k = 0; k < expected.length; k += 3) {
+            double[] values = {expected[k] & 0xFF, expected[k + 1] & 0xFF, expected[k + 2] & 0xFF};
+            if (values[0] >= 165 && values[1] >= 165 && values[2] >= 165) {
+                expected[k] = expected[k + 1] = expected[k + 2] = (byte) 255;
+            }
+        }
+
+        Enhancer.whiten(data, 3, 165);
+        assertArrayEquals(expected, data);
+    }
+}
@@ -0,0 +1,70 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HomographyTest {
+
+    private static final double[] PERSPECTIVE = {1.2, 0.1, 30, -0.05, 0.9, 12, 0.0004, -0.0002, 1};
+
+    @Test
+    public void testInverseUndoesTransform() {
+        double[] identity = Homography.multiply(PERSPECTIVE, Homography.invert(PERSPECTIVE));
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(i % 4 == 0 ? 1 : 0, identity[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testTranslationComposes() {
+        double[] point = new double[2];
+        double[] shifted = Homography.multiply(Homography.translation(-100, -50),
+                Homography.multiply(PERSPECTIVE, Homography.translation(20, 40)));
+
+        Homography.map(shifted, 5, 7, point);
+        double[] expected = new double[2];
+        Homography.map(PERSPECTIVE, 25, 47, expected);
+
+        assertEquals(expected[0] - 100, point[0], 1e-9);
+        assertEquals(expected[1] - 50, point[1], 1e-9);
+    }
+
+    @Test
+    public void testSourceBoundsHoldEveryTilePixel() {
+        double[] inverse = Homography.invert(PERSPECTIVE);
+        double[] point = new double[2];
+        int cols = 2000, rows = 1500;
+
+        for (int y = 0; y < 1200; y += 256) {
+            for (int x = 0; x < 1600; x += 256) {
+                int[] bounds = Homography.sourceBounds(inverse, x, y, 256, 256, 3, cols, rows);
+                if (bounds == null) continue;
+
+                for (int py = y; py < y + 256; py += 17) {
+                    for (int px = x; px < x + 256; px += 17) {
+                        Homography.map(inverse, px, py, point);
+                        if (point[0] < 0 || point[1] < 0 || point[0] >= cols || point[1] >= rows) continue;
+                        assertTrue(point[0] >= bounds[0] && point[0] < bounds[0] + bounds[2]);
+                        assertTrue(point[1] >= bounds[1] && point[1] < bounds[1] + bounds[3]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSourceBoundsOutsideImage() {
+        double[] inverse = Homography.invert(Homography.translation(5000, 5000));
+
+        assertNull(Homography.sourceBounds(inverse, 0, 0, 100, 100, 3, 1000, 1000));
+    }
+
+    @Test
+    public void testSourceBoundsAreClipped() {
+        int[] bounds = Homography.sourceBounds(Homography.translation(0, 0), 0, 0, 100, 100, 3, 50, 80);
+
+        assertArrayEquals(new int[]{0, 0, 50, 80}, bounds);
+    }
+}
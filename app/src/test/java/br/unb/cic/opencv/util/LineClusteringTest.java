@@ -0,0 +1,78 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LineClusteringTest {
+
+    @Test
+    public void testDuplicatesAlongAnEdgeCollapse() {
+        Segments segments = Segments.of(Arrays.asList(
+                new Line(new Point(100, 100), new Point(600, 102)),
+                new Line(new Point(400, 103), new Point(900, 104)),
+                new Line(new Point(880, 101), new Point(120, 99))));
+
+        Segments merged = LineClustering.merge(segments);
+
+        assertEquals(1, merged.size());
+        assertEquals(100, Math.min(merged.x1(0), merged.x2(0)), 2);
+        assertEquals(900, Math.max(merged.x1(0), merged.x2(0)), 2);
+        assertEquals(101.5, (merged.y1(0) + merged.y2(0)) / 2, 3);
+    }
+
+    @Test
+    public void testDistinctEdgesAreKept() {
+        Segments segments = Segments.of(Arrays.asList(
+                new Line(new Point(100, 100), new Point(900, 100)),
+                new Line(new Point(100, 700), new Point(900, 700)),
+                new Line(new Point(100, 100), new Point(100, 700)),
+                new Line(new Point(900, 100), new Point(900, 700))));
+
+        assertEquals(4, LineClustering.merge(segments).size());
+    }
+
+    @Test
+    public void testParallelLinesFarApartAreKept() {
+        Segments segments = Segments.of(Arrays.asList(
+                new Line(new Point(0, 100), new Point(500, 100)),
+                new Line(new Point(0, 130), new Point(500, 130))));
+
+        assertEquals(2, LineClustering.merge(segments).size());
+    }
+
+    @Test
+    public void testFewLinesPerOrientation() {
+        Segments segments = new Segments(50);
+        for (int i = 0; i < 50; i++) segments.add(0, 20 * i, 300 + i, 20 * i);
+
+        assertTrue(LineClustering.merge(segments).size() <= 10);
+    }
+
+    @Test
+    public void testDuplicatesAcrossTheFoldCollapse() {
+        // one edge of a page turned 45 degrees, its segments fall on both sides of the 135 degree fold
+        double below = Math.toRadians(134.5), above = Math.toRadians(135.5);
+        Segments segments = Segments.of(Arrays.asList(
+                new Line(new Point(500, 500), new Point(500 + 300 * Math.cos(below), 500 + 300 * Math.sin(below))),
+                new Line(new Point(400, 600), new Point(400 + 300 * Math.cos(above), 600 + 300 * Math.sin(above)))));
+
+        assertEquals(1, LineClustering.merge(segments).size());
+    }
+
+    @Test
+    public void testAngleBetweenWraps() {
+        assertEquals(Math.toRadians(1), LineClustering.angleBetween(Math.toRadians(134.5), Math.toRadians(-44.5)), 1e-9);
+        assertEquals(Math.toRadians(90), LineClustering.angleBetween(0, Math.toRadians(90)), 1e-9);
+        assertEquals(0, LineClustering.angleBetween(Math.toRadians(-45), Math.toRadians(135)), 1e-9);
+    }
+
+    @Test
+    public void testDirectionIsFolded() {
+        assertEquals(LineClustering.direction(0, 0, 10, 0), LineClustering.direction(10, 0, 0, 0), 1e-9);
+        assertEquals(LineClustering.direction(0, 0, 0, 10), LineClustering.direction(0, 10, 0, 0), 1e-9);
+    }
+}
@@ -0,0 +1,102 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MorphologyTest {
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(3);
+        int[][] shapes = {{1, 1}, {7, 5}, {40, 33}, {64, 48}};
+        int[][] kernels = {{2, 2}, {3, 1}, {1, 4}, {5, 5}, {10, 10}, {20, 7}, {26, 26}, {80, 80}};
+
+        for (int[] shape : shapes) {
+            int cols = shape[0], rows = shape[1];
+            byte[] image = new byte[rows * cols];
+            random.nextBytes(image);
+
+            for (int[] kernel : kernels) {
+                for (boolean max : new boolean[]{false, true}) {
+                    byte[] expected = bruteForce(image, rows, cols, kernel[0], kernel[1], max);
+                    byte[] actual = separable(image, rows, cols, kernel[0], kernel[1], max);
+                    assertArrayEquals(cols + "x" + rows + " kernel " + kernel[0] + "x" + kernel[1] + " max " + max,
+                            expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testClosingRemovesSmallHoles() {
+        int cols = 30, rows = 30;
+        byte[] image = new byte[rows * cols];
+        for (int i = 0; i < image.length; i++) image[i] = (byte) 255;
+        image[15 * cols + 15] = 0;
+
+        byte[] closed = separable(separable(image, rows, cols, 3, 3, true), rows, cols, 3, 3, false);
+
+        for (byte value : closed) assertEquals((byte) 255, value);
+    }
+
+    @Test
+    public void testLargeKernelTiming() {
+        int cols = 1280, rows = 960, k = 26;
+        byte[] image = new byte[rows * cols];
+        new Random(5).nextBytes(image);
+
+        long start = System.nanoTime();
+        separable(image, rows, cols, k, k, false);
+        long separableNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        bruteForceSeparable(image, rows, cols, k, k, false);
+        long naiveNs = System.nanoTime() - start;
+
+        System.out.println(String.format("1280x960 %dx%d erode: van Herk %d ms, naive separable %d ms",
+                k, k, separableNs / 1000000, naiveNs / 1000000));
+    }
+
+    private static byte[] separable(byte[] image, int rows, int cols, int width, int height, boolean max) {
+        byte[] horizontal = new byte[image.length];
+        if (width > 1) {
+            Morphology.horizontal(image, horizontal, rows, cols, width, max);
+        } else {
+            System.arraycopy(image, 0, horizontal, 0, image.length);
+        }
+        if (height <= 1) return horizontal;
+
+        byte[] out = new byte[image.length];
+        Morphology.vertical(horizontal, out, rows, cols, height, max);
+        return out;
+    }
+
+    /**
+     * OpenCV semantics: anchor at the kernel center (k / 2), pixels outside the image are ignored
+     */
+    private static byte[] bruteForce(byte[] image, int rows, int cols, int width, int height, boolean max) {
+        byte[] out = new byte[image.length];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int best = max ? 0 : 255;
+                for (int dy = 0; dy < height; dy++) {
+                    for (int dx = 0; dx < width; dx++) {
+                        int yy = y - height / 2 + dy, xx = x - width / 2 + dx;
+                        if (yy < 0 || yy >= rows || xx < 0 || xx >= cols) continue;
+                        int value = image[yy * cols + xx] & 0xFF;
+                        best = max ? Math.max(best, value) : Math.min(best, value);
+                    }
+                }
+                out[y * cols + x] = (byte) best;
+            }
+        }
+        return out;
+    }
+
+    private static byte[] bruteForceSeparable(byte[] image, int rows, int cols, int width, int height, boolean max) {
+        return bruteForce(bruteForce(image, rows, cols, width, 1, max), rows, cols, 1, height, max);
+    }
+}
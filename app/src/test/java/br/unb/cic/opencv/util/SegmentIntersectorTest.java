@@ -0,0 +1,76 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SegmentIntersectorTest {
+
+    private static final double WIDTH = 1280, HEIGHT = 960;
+
+    @Test
+    public void testCrossingSegments() {
+        double[] segments = {
+                0, 0, 10, 10,
+                0, 10, 10, 0,
+                20, 20, 30, 20
+        };
+        SegmentIntersector intersector = new SegmentIntersector();
+
+        assertEquals(1, intersector.findIntersections(segments, 3, WIDTH, HEIGHT));
+        assertEquals(0, intersector.first(0));
+        assertEquals(1, intersector.second(0));
+        assertEquals(5, intersector.x(0), 1e-9);
+        assertEquals(5, intersector.y(0), 1e-9);
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        SegmentIntersector intersector = new SegmentIntersector();
+        for (int n : new int[]{2, 10, 100, 1000}) {
+            double[] segments = randomSegments(n, new Random(n));
+            assertSameHits(segments, n, intersector);
+        }
+    }
+
+    private static void assertSameHits(double[] segments, int n, SegmentIntersector intersector) {
+        int count = intersector.findIntersections(segments, n, WIDTH, HEIGHT);
+        double[] pt = new double[2];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (SegmentIntersector.intersect(segments, i, j, pt) && inside(pt)) {
+                    assertTrue(k < count);
+                    assertEquals(i, intersector.first(k));
+                    assertEquals(j, intersector.second(k));
+                    assertEquals(pt[0], intersector.x(k), 0);
+                    assertEquals(pt[1], intersector.y(k), 0);
+                    k++;
+                }
+            }
+        }
+        assertEquals(k, count);
+    }
+
+    private static boolean inside(double[] pt) {
+        return pt[0] >= 0 && pt[1] >= 0 && pt[0] < WIDTH && pt[1] < HEIGHT;
+    }
+
+    /**
+     * Segments of 20 to 300 pixels, similar to what HoughLinesP returns on a cluttered photo
+     */
+    private static double[] randomSegments(int n, Random random) {
+        double[] segments = new double[4 * n];
+        for (int i = 0; i < n; i++) {
+            double x = random.nextDouble() * WIDTH, y = random.nextDouble() * HEIGHT;
+            double angle = random.nextDouble() * Math.PI, length = 20 + random.nextDouble() * 280;
+            segments[4 * i] = x;
+            segments[4 * i + 1] = y;
+            segments[4 * i + 2] = Math.max(0, Math.min(WIDTH - 1, x + Math.cos(angle) * length));
+            segments[4 * i + 3] = Math.max(0, Math.min(HEIGHT - 1, y + Math.sin(angle) * length));
+        }
+        return segments;
+    }
+}
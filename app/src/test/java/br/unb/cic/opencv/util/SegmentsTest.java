@@ -0,0 +1,47 @@
+package br.unb.cic.opencv.util;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import static org.junit.Assert.*;
+
+public class SegmentsTest {
+
+    @Test
+    public void testCachedGeometryMatchesLine() {
+        Segments segments = new Segments(1);
+        segments.add(0, 0, 3, 4);
+        segments.add(1, 2, 1, 5);
+        Line line = segments.line(0);
+
+        assertEquals(2, segments.size());
+        assertEquals(line.size(), segments.length(0), 0);
+        assertEquals(line.theta(), segments.theta(0), 0);
+        assertEquals(Math.PI / 2, segments.theta(1), 1e-12);
+    }
+
+    @Test
+    public void testNeighbourMatchesLine() {
+        Segments segments = new Segments(3);
+        segments.add(0, 0, 10, 0);
+        segments.add(13, 0, 20, 0);
+        segments.add(30, 0, 40, 0);
+
+        assertEquals(segments.line(0).isNeighbour(segments.line(1)), segments.isNeighbour(0, 1));
+        assertTrue(segments.isNeighbour(0, 1));
+        assertFalse(segments.isNeighbour(0, 2));
+    }
+
+    @Test
+    public void testQuadAreaMatchesSquare() {
+        Quads quads = new Quads();
+        quads.add(0, 0, 40, 0, 0, 30, 40, 30);
+        quads.add(0, 0, 10, 0, 0, 10, 10, 10);
+        quads.add(0, 0, 50, 0, 0, 20, 50, 20);
+
+        Square square = quads.square(0);
+        assertEquals(1200, square.area(), 1e-9);
+        assertEquals(square.area(), new Square(new Point(0, 0), new Point(40, 0), new Point(0, 30), new Point(40, 30)).area(), 0);
+        assertEquals(0, quads.largest());
+    }
+}
@@ -35,7 +35,19 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private static final int STARTED = 1;
 
     private int mState = STOPPED;
-    private Bitmap mCacheBitmap;
+
+    /* Two cache bitmaps, with the Mats the frames are copied to, so the listener can work on the next frame
+     * while the render thread converts and presents the previous one */
+    private final Bitmap[] mCacheBitmaps = new Bitmap[2];
+    private final Mat[] mRenderMats = new Mat[2];
+    private final Object mRenderLock = new Object();
+    private int mPendingBuffer = -1;
+    private int mRenderingBuffer = -1;
+    private long mDroppedFrames;
+    private Thread mRenderThread;
+    private volatile boolean mRenderStop;
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
@@ -374,8 +386,16 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
-        if (mCacheBitmap != null) {
-            mCacheBitmap.recycle();
+        stopRenderThread();
+        for (int i = 0; i < mCacheBitmaps.length; i++) {
+            if (mCacheBitmaps[i] != null) {
+                mCacheBitmaps[i].recycle();
+                mCacheBitmaps[i] = null;
+            }
+            if (mRenderMats[i] != null) {
+                mRenderMats[i].release();
+                mRenderMats[i] = null;
+            }
         }
     }
 
@@ -383,6 +403,9 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
      * then displayed on the screen.
+     * The frame is copied to the buffer the render thread isn't presenting and handed over to it, so this method
+     * returns as soon as the listener is done. When the render thread falls behind, a frame waiting to be
+     * presented is replaced by the newer one.
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
@@ -394,44 +417,121 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             modified = frame.rgba();
         }
 
-        boolean bmpValid = true;
-        if (modified != null) {
-            try {
-                Utils.matToBitmap(modified, mCacheBitmap);
-            } catch(Exception e) {
-                Log.e(TAG, "Mat type: " + modified);
-                Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
-                Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
-                bmpValid = false;
+        if (modified == null || mRenderMats[0] == null) {
+            return;
+        }
+
+        int back;
+        synchronized (mRenderLock) {
+            back = mRenderingBuffer >= 0 ? 1 - mRenderingBuffer : (mPendingBuffer == 0 ? 1 : 0);
+            if (mPendingBuffer == back) {
+                /* Not presented yet, the new frame takes its place */
+                mPendingBuffer = -1;
+                mDroppedFrames++;
+            }
+        }
+
+        modified.copyTo(mRenderMats[back]);
+
+        synchronized (mRenderLock) {
+            if (mPendingBuffer >= 0) {
+                mDroppedFrames++;
             }
+            mPendingBuffer = back;
+            mRenderLock.notify();
         }
+    }
 
-        if (bmpValid && mCacheBitmap != null) {
-            Canvas canvas = getHolder().lockCanvas();
-            if (canvas != null) {
-                canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "mStretch value: " + mScale);
-
-                if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
-                } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
+    private void startRenderThread() {
+        mRenderStop = false;
+        mPendingBuffer = mRenderingBuffer = -1;
+        mDroppedFrames = 0;
+        mRenderThread = new Thread(new RenderWorker(), "CameraBridgeRenderer");
+        mRenderThread.start();
+    }
+
+    private void stopRenderThread() {
+        if (mRenderThread == null) {
+            return;
+        }
+        synchronized (mRenderLock) {
+            mRenderStop = true;
+            mRenderLock.notify();
+        }
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mRenderThread = null;
+        Log.d(TAG, "Render thread stopped, " + mDroppedFrames + " frames replaced before being presented");
+    }
+
+    /**
+     * Converts a buffer to its bitmap and presents it
+     */
+    private void drawBuffer(int index) {
+        Mat mat = mRenderMats[index];
+        Bitmap bitmap = mCacheBitmaps[index];
+        try {
+            Utils.matToBitmap(mat, bitmap);
+        } catch(Exception e) {
+            Log.e(TAG, "Mat type: " + mat);
+            Log.e(TAG, "Bitmap type: " + bitmap.getWidth() + "*" + bitmap.getHeight());
+            Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
+            return;
+        }
+
+        Canvas canvas = getHolder().lockCanvas();
+        if (canvas != null) {
+            canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "mStretch value: " + mScale);
+
+            float scale = mScale != 0 ? mScale : 1;
+            int width = (int) (scale * bitmap.getWidth());
+            int height = (int) (scale * bitmap.getHeight());
+            int left = (canvas.getWidth() - width) / 2;
+            int top = (canvas.getHeight() - height) / 2;
+            mSrcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            mDstRect.set(left, top, left + width, top + height);
+            canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
+
+            FpsMeter fpsMeter = mFpsMeter;
+            if (fpsMeter != null) {
+                fpsMeter.measure();
+                fpsMeter.draw(canvas, 20, 30);
+            }
+            getHolder().unlockCanvasAndPost(canvas);
+        }
+    }
+
+    private class RenderWorker implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                int index;
+                synchronized (mRenderLock) {
+                    while (mPendingBuffer < 0 && !mRenderStop) {
+                        try {
+                            mRenderLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (mRenderStop) {
+                        return;
+                    }
+                    index = mRenderingBuffer = mPendingBuffer;
+                    mPendingBuffer = -1;
                 }
 
-                if (mFpsMeter != null) {
-                    mFpsMeter.measure();
-                    mFpsMeter.draw(canvas, 20, 30);
+                drawBuffer(index);
+
+                synchronized (mRenderLock) {
+                    mRenderingBuffer = -1;
                 }
-                getHolder().unlockCanvasAndPost(canvas);
             }
         }
     }
@@ -454,7 +554,12 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
     protected void AllocateCache()
     {
-        mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        stopRenderThread();
+        for (int i = 0; i < mCacheBitmaps.length; i++) {
+            mCacheBitmaps[i] = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+            mRenderMats[i] = new Mat();
+        }
+        startRenderThread();
     }
 
     public interface ListItemAccessor {
@@ -214,7 +214,7 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
         }
     }
 
-    private static int loadShader(String vss, String fss) {
+    public static int loadShader(String vss, String fss) {
         Log.d("CameraGLRendererBase", "loadShader");
         int vshader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
         GLES20.glShaderSource(vshader, vss);
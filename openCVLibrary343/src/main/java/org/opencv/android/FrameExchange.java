@@ -0,0 +1,165 @@
+package org.opencv.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free hand-off of frame buffers between one producer (the camera callback) and one consumer
+ * (the processing thread). Buffers are named by slot index: the producer always owns one slot to copy
+ * the next frame into, up to {@code depth} slots wait in the ready queue and the consumer owns the slot
+ * it is processing, so {@link #slots()} buffers are needed.
+ * <p>
+ * When the ready queue is full the producer either drops the oldest queued frame or, in blocking mode,
+ * parks until the consumer takes one. Waiting threads are parked with {@link LockSupport}, there is no
+ * monitor involved.
+ */
+final class FrameExchange {
+
+    private final boolean mBlock;
+
+    private final int[] mReady;
+    private final AtomicLong mReadyHead = new AtomicLong();
+    private final AtomicLong mReadyTail = new AtomicLong();
+
+    private final int[] mFree;
+    private final AtomicLong mFreeHead = new AtomicLong();
+    private final AtomicLong mFreeTail = new AtomicLong();
+
+    private final AtomicReference<Thread> mProducer = new AtomicReference<>();
+    private final AtomicReference<Thread> mConsumer = new AtomicReference<>();
+    private volatile boolean mStopped;
+
+    // Each counter has a single writer
+    private volatile long mCaptured;
+    private volatile long mProcessed;
+    private volatile long mDropped;
+
+    FrameExchange(int depth, boolean block) {
+        if (depth < 1)
+            throw new IllegalArgumentException("Queue depth must be at least 1: " + depth);
+        mBlock = block;
+        mReady = new int[depth];
+        mFree = new int[depth + 2];
+        for (int slot = 0; slot < mFree.length; slot++)
+            mFree[slot] = slot;
+        mFreeTail.set(mFree.length);
+    }
+
+    int slots() {
+        return mFree.length;
+    }
+
+    /**
+     * Producer: takes the first slot to copy a frame into
+     */
+    int acquire() {
+        long head = mFreeHead.get();
+        if (head == mFreeTail.get())
+            throw new IllegalStateException("No free frame slot");
+        int slot = mFree[(int) (head % mFree.length)];
+        mFreeHead.set(head + 1);
+        return slot;
+    }
+
+    /**
+     * Producer: queues the filled slot and returns the one to copy the next frame into. A blocking
+     * exchange waits here while the queue is full; once stopped the frame is dropped instead.
+     */
+    int publish(int slot) {
+        mCaptured++;
+        long tail = mReadyTail.get();
+        while (true) {
+            long head = mReadyHead.get();
+            if (tail - head < mReady.length)
+                break;
+
+            if (mBlock) {
+                if (mStopped) {
+                    mDropped++;
+                    return slot;
+                }
+                mProducer.set(Thread.currentThread());
+                if (mReadyHead.get() == head && !mStopped)
+                    LockSupport.park(this);
+                mProducer.set(null);
+            } else {
+                // The consumer may take the oldest frame first, then the CAS fails and there is room anyway
+                int oldest = mReady[(int) (head % mReady.length)];
+                if (mReadyHead.compareAndSet(head, head + 1)) {
+                    mDropped++;
+                    enqueue(slot, tail);
+                    return oldest;
+                }
+            }
+        }
+        enqueue(slot, tail);
+        // Slots: this one is queued, at most depth - 1 others are and the consumer holds one, so one is free
+        return acquire();
+    }
+
+    /**
+     * Consumer: returns the oldest queued slot, parking until there is one. Returns -1 once stopped
+     */
+    int take() {
+        while (!mStopped) {
+            long head = mReadyHead.get();
+            if (head != mReadyTail.get()) {
+                int slot = mReady[(int) (head % mReady.length)];
+                if (mReadyHead.compareAndSet(head, head + 1)) {
+                    unpark(mProducer);
+                    return slot;
+                }
+                continue;
+            }
+            mConsumer.set(Thread.currentThread());
+            if (mReadyHead.get() == mReadyTail.get() && !mStopped)
+                LockSupport.park(this);
+            mConsumer.set(null);
+        }
+        return -1;
+    }
+
+    /**
+     * Consumer: hands a processed slot back to the producer. Must be called before the next {@link #take()}
+     */
+    void release(int slot) {
+        long tail = mFreeTail.get();
+        mFree[(int) (tail % mFree.length)] = slot;
+        mFreeTail.set(tail + 1);
+        mProcessed++;
+    }
+
+    /**
+     * Wakes both sides; {@link #take()} returns -1 and a blocked {@link #publish(int)} drops its frame
+     */
+    void stop() {
+        mStopped = true;
+        unpark(mProducer);
+        unpark(mConsumer);
+    }
+
+    long captured() {
+        return mCaptured;
+    }
+
+    long processed() {
+        return mProcessed;
+    }
+
+    long dropped() {
+        return mDropped;
+    }
+
+    private void enqueue(int slot, long tail) {
+        mReady[(int) (tail % mReady.length)] = slot;
+        mReadyTail.set(tail + 1);
+        unpark(mConsumer);
+    }
+
+    private static void unpark(AtomicReference<Thread> waiter) {
+        Thread thread = waiter.get();
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+}
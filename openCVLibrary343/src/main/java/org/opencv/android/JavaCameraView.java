@@ -34,9 +34,11 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     private byte mBuffer[];
     private Mat[] mFrameChain;
-    private int mChainIdx = 0;
+    private FrameExchange mFrameExchange;
+    private int mWriteSlot;
+    private FrameDropPolicy mFrameDropPolicy = FrameDropPolicy.LATEST_ONLY;
+    private int mQueueDepth = 1;
     private Thread mThread;
-    private boolean mStopThread;
 
     protected Camera mCamera;
     protected JavaCameraFrame[] mCameraFrame;
@@ -58,6 +60,18 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         }
     }
 
+    /**
+     * What happens to a camera frame that arrives while the processing thread is still busy
+     */
+    public enum FrameDropPolicy {
+        /** Only the newest frame waits, it replaces the one that was waiting */
+        LATEST_ONLY,
+        /** Up to N frames wait, the oldest one is dropped to make room */
+        DROP_OLDEST,
+        /** Up to N frames wait, the camera callback waits for room and no frame is dropped */
+        BLOCK
+    }
+
     public JavaCameraView(Context context, int cameraId) {
         super(context, cameraId);
     }
@@ -66,6 +80,38 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         super(context, attrs);
     }
 
+    /**
+     * Sets how frames are queued for {@link CvCameraViewListener2#onCameraFrame}, applied on the next
+     * camera connection. The queue depth is ignored for {@link FrameDropPolicy#LATEST_ONLY}.
+     * {@link FrameDropPolicy#BLOCK} stalls the thread that opened the camera (usually the UI thread)
+     * while the queue is full, so it is meant for runs where every frame has to be processed.
+     */
+    public void setFrameDropPolicy(FrameDropPolicy policy, int queueDepth) {
+        if (queueDepth < 1)
+            throw new IllegalArgumentException("Queue depth must be at least 1: " + queueDepth);
+        mFrameDropPolicy = policy;
+        mQueueDepth = policy == FrameDropPolicy.LATEST_ONLY ? 1 : queueDepth;
+    }
+
+    public FrameDropPolicy getFrameDropPolicy() {
+        return mFrameDropPolicy;
+    }
+
+    /** Frames the camera delivered since the last connection */
+    public long getCapturedFrames() {
+        return mFrameExchange == null ? 0 : mFrameExchange.captured();
+    }
+
+    /** Frames passed to the listener since the last connection */
+    public long getProcessedFrames() {
+        return mFrameExchange == null ? 0 : mFrameExchange.processed();
+    }
+
+    /** Frames dropped by the policy since the last connection */
+    public long getDroppedFrames() {
+        return mFrameExchange == null ? 0 : mFrameExchange.dropped();
+    }
+
     protected boolean initializeCamera(int width, int height) {
         Log.d(TAG, "Initialize java camera");
         boolean result = true;
@@ -195,15 +241,18 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                     mCamera.addCallbackBuffer(mBuffer);
                     mCamera.setPreviewCallbackWithBuffer(this);
 
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mFrameExchange = new FrameExchange(mQueueDepth, mFrameDropPolicy == FrameDropPolicy.BLOCK);
+                    int slots = mFrameExchange.slots();
+                    mFrameChain = new Mat[slots];
+                    for (int i = 0; i < slots; i++)
+                        mFrameChain[i] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mWriteSlot = mFrameExchange.acquire();
 
                     AllocateCache();
 
-                    mCameraFrame = new JavaCameraFrame[2];
-                    mCameraFrame[0] = new JavaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                    mCameraFrame[1] = new JavaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
+                    mCameraFrame = new JavaCameraFrame[slots];
+                    for (int i = 0; i < slots; i++)
+                        mCameraFrame[i] = new JavaCameraFrame(mFrameChain[i], mFrameWidth, mFrameHeight);
 
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
@@ -236,18 +285,16 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             }
             mCamera = null;
             if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
+                for (Mat frame : mFrameChain)
+                    frame.release();
             }
             if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
+                for (JavaCameraFrame frame : mCameraFrame)
+                    frame.release();
             }
         }
     }
 
-    private boolean mCameraFrameReady = false;
-
     @Override
     protected boolean connectCamera(int width, int height) {
 
@@ -259,11 +306,8 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
-
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
-        mStopThread = false;
         mThread = new Thread(new CameraWorker());
         mThread.start();
 
@@ -277,11 +321,9 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
          */
         Log.d(TAG, "Disconnecting from camera");
         try {
-            mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            if (mFrameExchange != null)
+                mFrameExchange.stop();
             Log.d(TAG, "Waiting for thread");
             if (mThread != null)
                 mThread.join();
@@ -291,21 +333,27 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             mThread =  null;
         }
 
+        if (mFrameExchange != null)
+            Log.i(TAG, mFrameDropPolicy + ": " + mFrameExchange.captured() + " frames captured, "
+                    + mFrameExchange.processed() + " processed, " + mFrameExchange.dropped() + " dropped");
+
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
+        FrameExchange exchange;
         synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+            // Only guards the copy against releaseCamera()
+            mFrameChain[mWriteSlot].put(0, 0, frame);
+            exchange = mFrameExchange;
         }
+        // The hand-off is lock-free and may park in BLOCK mode, so it runs outside the monitor that
+        // releaseCamera() and the render thread take. Only this callback touches mWriteSlot after connecting.
+        mWriteSlot = exchange.publish(mWriteSlot);
         if (mCamera != null)
             mCamera.addCallbackBuffer(mBuffer);
     }
@@ -313,7 +361,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     private class JavaCameraFrame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+            return mGray;
         }
 
         @Override
@@ -333,14 +381,18 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             mWidth = width;
             mHeight = height;
             mYuvFrameData = Yuv420sp;
+            // the Y plane shares the frame buffer, so one header serves every frame
+            mGray = mYuvFrameData.submat(0, mHeight, 0, mWidth);
             mRgba = new Mat();
         }
 
         public void release() {
+            mGray.release();
             mRgba.release();
         }
 
         private Mat mYuvFrameData;
+        private Mat mGray;
         private Mat mRgba;
         private int mWidth;
         private int mHeight;
@@ -350,29 +402,13 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         @Override
         public void run() {
-            do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
-                }
-
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
-                }
-            } while (!mStopThread);
+            FrameExchange exchange = mFrameExchange;
+            int slot;
+            while ((slot = exchange.take()) >= 0) {
+                if (!mFrameChain[slot].empty())
+                    deliverAndDrawFrame(mCameraFrame[slot]);
+                exchange.release(slot);
+            }
             Log.d(TAG, "Finish processing thread");
         }
     }
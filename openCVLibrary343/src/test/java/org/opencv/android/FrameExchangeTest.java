@@ -0,0 +1,183 @@
+package org.opencv.android;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FrameExchangeTest {
+
+    private static final int FRAMES = 200000;
+    private static final int FREE = 0, PRODUCER = 1, CONSUMER = 2;
+
+    @Test(timeout = 30000)
+    public void testLatestOnlyHandsOverSlots() throws InterruptedException {
+        exchange(new FrameExchange(1, false), false);
+    }
+
+    @Test(timeout = 30000)
+    public void testDropOldestHandsOverSlots() throws InterruptedException {
+        exchange(new FrameExchange(3, false), false);
+    }
+
+    @Test(timeout = 30000)
+    public void testBlockHandsOverEveryFrame() throws InterruptedException {
+        exchange(new FrameExchange(3, true), true);
+    }
+
+    @Test
+    public void testFullQueueDropsOldest() {
+        FrameExchange exchange = new FrameExchange(2, false);
+        int first = exchange.acquire();
+        int second = exchange.publish(first);
+        int third = exchange.publish(second);
+
+        // the queue holds first and second, so first is dropped and handed back for the next frame
+        assertEquals(first, exchange.publish(third));
+        assertEquals(1, exchange.dropped());
+
+        assertEquals(second, exchange.take());
+        exchange.release(second);
+        assertEquals(third, exchange.take());
+        exchange.release(third);
+        assertEquals(3, exchange.captured());
+        assertEquals(2, exchange.processed());
+    }
+
+    @Test
+    public void testLatestOnlyKeepsNewest() {
+        FrameExchange exchange = new FrameExchange(1, false);
+        int first = exchange.acquire();
+        int second = exchange.publish(first);
+
+        assertEquals(first, exchange.publish(second));
+        assertEquals(second, exchange.take());
+        assertEquals(1, exchange.dropped());
+    }
+
+    @Test(timeout = 10000)
+    public void testStopDropsBlockedFrame() throws InterruptedException {
+        FrameExchange exchange = new FrameExchange(1, true);
+        int first = exchange.acquire();
+        int second = exchange.publish(first);
+
+        AtomicInteger returned = new AtomicInteger(-1);
+        Thread producer = new Thread(() -> returned.set(exchange.publish(second)));
+        producer.start();
+        awaitParked(producer);
+
+        exchange.stop();
+        producer.join();
+        assertEquals(second, returned.get());
+        assertEquals(2, exchange.captured());
+        assertEquals(1, exchange.dropped());
+    }
+
+    @Test(timeout = 10000)
+    public void testTakeResumesBlockedPublish() throws InterruptedException {
+        FrameExchange exchange = new FrameExchange(1, true);
+        int first = exchange.acquire();
+        int second = exchange.publish(first);
+
+        AtomicInteger returned = new AtomicInteger(-1);
+        Thread producer = new Thread(() -> returned.set(exchange.publish(second)));
+        producer.start();
+        awaitParked(producer);
+
+        assertEquals(first, exchange.take());
+        producer.join();
+        assertEquals(second, exchange.take());
+        // first is still held by the consumer, so the producer moved on to the third slot
+        assertTrue(returned.get() != first && returned.get() != second);
+        assertEquals(0, exchange.dropped());
+    }
+
+    @Test(timeout = 10000)
+    public void testStopWakesConsumer() throws InterruptedException {
+        FrameExchange exchange = new FrameExchange(2, false);
+        exchange.acquire();
+
+        AtomicInteger taken = new AtomicInteger();
+        Thread consumer = new Thread(() -> taken.set(exchange.take()));
+        consumer.start();
+        awaitParked(consumer);
+
+        exchange.stop();
+        consumer.join();
+        assertEquals(-1, taken.get());
+        assertEquals(-1, exchange.take());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDepthMustBePositive() {
+        new FrameExchange(0, false);
+    }
+
+    /**
+     * Runs a producer and a consumer over the exchange. Each side marks the slot it owns while it touches it,
+     * so a slot held by both at once fails the marking; the consumer checks that frame stamps only go forward,
+     * and with no gap when the exchange is lossless
+     */
+    private static void exchange(FrameExchange exchange, boolean lossless) throws InterruptedException {
+        long[] stamps = new long[exchange.slots()];
+        AtomicIntegerArray owners = new AtomicIntegerArray(exchange.slots());
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            int slot = exchange.acquire();
+            for (int frame = 0; frame < FRAMES; frame++) {
+                if (!owners.compareAndSet(slot, FREE, PRODUCER)) {
+                    failure.compareAndSet(null, "producer got slot " + slot + " while the consumer holds it");
+                }
+                stamps[slot] = frame;
+                owners.set(slot, FREE);
+                slot = exchange.publish(slot);
+            }
+        });
+
+        Thread consumer = new Thread(() -> {
+            long last = -1;
+            while (last < FRAMES - 1) {
+                int slot = exchange.take();
+                if (slot == -1) {
+                    failure.compareAndSet(null, "stopped before the last frame");
+                    return;
+                }
+                if (!owners.compareAndSet(slot, FREE, CONSUMER)) {
+                    failure.compareAndSet(null, "consumer got slot " + slot + " while the producer holds it");
+                }
+                long stamp = stamps[slot];
+                if (stamp <= last || lossless && stamp != last + 1) {
+                    failure.compareAndSet(null, "frame " + stamp + " after " + last);
+                }
+                last = stamp;
+                owners.set(slot, FREE);
+                exchange.release(slot);
+            }
+        });
+
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join();
+        exchange.stop();
+
+        if (failure.get() != null) {
+            fail(failure.get());
+        }
+        assertEquals(FRAMES, exchange.captured());
+        assertEquals(exchange.captured(), exchange.processed() + exchange.dropped());
+        if (lossless) {
+            assertEquals(0, exchange.dropped());
+        }
+    }
+
+    private static void awaitParked(Thread thread) {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+    }
+}